@@ -0,0 +1,176 @@
+package com.ro.clients.proxy;
+
+import com.ro.model.BatchPayment;
+import com.ro.model.Payment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the payments of many concurrent callers as one POST /payments/batch: a collector thread takes
+ * everything queued, waits at most max-wait for up to max-size payments, and sends them on a virtual thread
+ * while it collects the next batch, with at most max-in-flight batches sent at a time. Every caller gets a
+ * future completed with its own payment, found by its request id in the response.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "payments.batch.enabled", havingValue = "true")
+public class PaymentBatcher {
+    private final PaymentProxy paymentProxy;
+    private final int maxSize;
+    private final long maxWaitNanos;
+    private final Semaphore inFlight;
+    private final BlockingQueue<PendingPayment> queue;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread collector = Thread.ofPlatform().name("payment-batcher").daemon().unstarted(this::collect);
+    private volatile boolean stopping;
+
+    public PaymentBatcher(PaymentProxy paymentProxy,
+                          @Value("${payments.batch.max-size:100}") int maxSize,
+                          @Value("${payments.batch.max-wait:5ms}") Duration maxWait,
+                          @Value("${payments.batch.max-in-flight:8}") int maxInFlight,
+                          @Value("${payments.batch.capacity:10000}") int capacity) {
+        this.paymentProxy = paymentProxy;
+        this.maxSize = maxSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        collector.start();
+    }
+
+    /**
+     * Queues the payment for the next batch; the future fails with a 503 ResponseStatusException when the queue
+     * is full or the batcher is stopping, with a 422 one when the payment is refused by the payments service, or
+     * with the batch it was sent in.
+     */
+    public CompletableFuture<Payment> createPayment(String requestId, Payment payment) {
+        PendingPayment pending = new PendingPayment(requestId, payment, new CompletableFuture<>());
+        if (stopping || !queue.offer(pending)) {
+            pending.result().completeExceptionally(unavailable(stopping
+                    ? "Payment batcher stopped" : "Too many payments waiting for a batch"));
+        } else if (stopping && queue.remove(pending)) {
+            // stop() may have drained the queue already; if the payment is not in it any more, it was taken
+            pending.result().completeExceptionally(unavailable("Payment batcher stopped"));
+        }
+        return pending.result();
+    }
+
+    private void collect() {
+        List<PendingPayment> batch = new ArrayList<>(maxSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                queue.drainTo(batch, maxSize - batch.size());
+                while (batch.size() < maxSize) {
+                    PendingPayment next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxSize - batch.size());
+                }
+                inFlight.acquire();
+                List<PendingPayment> full = batch;
+                senders.execute(() -> {
+                    try {
+                        send(full);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                batch = new ArrayList<>(maxSize);
+            }
+        } catch (InterruptedException e) {
+            // stopping: the batch being collected is sent without waiting for a permit
+            if (!batch.isEmpty()) {
+                List<PendingPayment> last = batch;
+                senders.execute(() -> send(last));
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(List<PendingPayment> batch) {
+        List<BatchPayment> request = new ArrayList<>(batch.size());
+        for (PendingPayment pending : batch) {
+            BatchPayment item = new BatchPayment();
+            item.setRequestId(pending.requestId());
+            item.setPayment(pending.payment());
+            request.add(item);
+        }
+
+        Map<String, BatchPayment> results = new HashMap<>();
+        try {
+            for (BatchPayment item : paymentProxy.createPayments(request)) {
+                results.put(item.getRequestId(), item);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Batch of {} payments failed: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            return;
+        }
+
+        for (PendingPayment pending : batch) {
+            BatchPayment result = results.get(pending.requestId());
+            if (result == null) {
+                pending.result().completeExceptionally(
+                        new IllegalStateException("No result for payment " + pending.requestId()));
+            } else if (result.getError() != null) {
+                pending.result().completeExceptionally(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Payment " + pending.requestId() + " refused: " + result.getError()));
+            } else {
+                pending.result().complete(result.getPayment());
+            }
+        }
+    }
+
+    /**
+     * Refuses new payments, stops collecting and sends what is still queued, waiting for the batches in flight.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        collector.interrupt();
+        collector.join();
+        List<PendingPayment> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += maxSize) {
+            List<PendingPayment> batch = rest.subList(from, Math.min(from + maxSize, rest.size()));
+            senders.execute(() -> send(batch));
+        }
+        senders.close();
+    }
+
+    /**
+     * A 503: the payment was not sent, and can be tried again later.
+     */
+    private static ResponseStatusException unavailable(String reason) {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, reason);
+    }
+
+    private record PendingPayment(String requestId, Payment payment, CompletableFuture<Payment> result) {
+    }
+}
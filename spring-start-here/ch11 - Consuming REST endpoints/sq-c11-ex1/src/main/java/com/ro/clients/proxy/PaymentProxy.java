@@ -1,11 +1,14 @@
 package com.ro.clients.proxy;
 
+import com.ro.model.BatchPayment;
 import com.ro.model.Payment;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 
+import java.util.List;
+
 @FeignClient(
         name = "payments",
         url = "${name.service.url}"
@@ -17,4 +20,9 @@ public interface PaymentProxy {
             @RequestHeader String requestId,
             @RequestBody Payment payment
     );
+
+    @PostMapping("/payments/batch")
+    List<BatchPayment> createPayments(
+            @RequestBody List<BatchPayment> payments
+    );
 }
@@ -1,7 +1,9 @@
 package com.ro.clients.proxy;
 
+import com.ro.model.BatchPayment;
 import com.ro.model.Payment;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -9,6 +11,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
 import java.util.UUID;
 
 @Component
@@ -38,4 +41,22 @@ public class PaymentProxy {
 
         return response.getBody();
     }
+
+    /**
+     * Sends many payments, each with its own request id, in one request.
+     */
+    public List<BatchPayment> createPayments(List<BatchPayment> payments) {
+        String uri = paymentsServiceUrl + "/payments/batch";
+
+        HttpEntity<List<BatchPayment>> httpEntity = new HttpEntity<>(payments);
+
+        ResponseEntity<List<BatchPayment>> response =
+                rest.exchange(uri,
+                        HttpMethod.POST,
+                        httpEntity,
+                        new ParameterizedTypeReference<>() {
+                        });
+
+        return response.getBody();
+    }
 }
@@ -1,14 +1,91 @@
 package com.ro.config;
 
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
 @Configuration
 public class ProjectConfig {
 
+    @Value("${payments.http.max-connections:200}")
+    private int maxConnections = 200;
+
+    @Value("${payments.http.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute = 50;
+
+    @Value("${payments.http.connect-timeout:1s}")
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    @Value("${payments.http.read-timeout:5s}")
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    @Value("${payments.http.pool-timeout:1s}")
+    private Duration poolTimeout = Duration.ofSeconds(1);
+
+    @Value("${payments.http.keep-alive:30s}")
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    @Value("${payments.http.idle-eviction:30s}")
+    private Duration idleEviction = Duration.ofSeconds(30);
+
+    /**
+     * With payments.http.pooled=false, the JDK HttpURLConnection of new RestTemplate(), which keeps at most
+     * http.maxConnections (5) idle connections per host and so connects again for most calls under load.
+     */
+    @Bean
+    public RestTemplate restTemplate(ObjectProvider<CloseableHttpClient> paymentsHttpClient) {
+        CloseableHttpClient httpClient = paymentsHttpClient.getIfAvailable();
+        if (httpClient == null) {
+            return new RestTemplate();
+        }
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    /**
+     * Apache HttpClient with a pool of keep-alive connections: at most max-connections-per-route to the
+     * payments service (max-connections in all), reused for keep-alive unless the server's Keep-Alive header
+     * says otherwise, checked before reuse when idle for over a second, and closed by a background thread once
+     * idle for idle-eviction.
+     * A call waits at most pool-timeout for a free connection, connect-timeout to connect and read-timeout
+     * for the response.
+     * Not created with payments.http.pooled=false, so the unpooled RestTemplate runs no eviction thread.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    @ConditionalOnProperty(name = "payments.http.pooled", havingValue = "true", matchIfMissing = true)
+    public CloseableHttpClient paymentsHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(1))
+                        .build())
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .setConnectionKeepAlive(TimeValue.of(keepAlive))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEviction))
+                .build();
     }
 }
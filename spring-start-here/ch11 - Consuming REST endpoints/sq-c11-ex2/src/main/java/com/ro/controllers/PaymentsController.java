@@ -1,26 +1,38 @@
 package com.ro.controllers;
 
+import com.ro.clients.proxy.PaymentBatcher;
 import com.ro.clients.proxy.PaymentProxy;
 import com.ro.model.Payment;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
 public class PaymentsController {
     private final PaymentProxy paymentProxy;
+    private final PaymentBatcher paymentBatcher;
 
-    public PaymentsController(PaymentProxy paymentProxy) {
+    public PaymentsController(PaymentProxy paymentProxy, ObjectProvider<PaymentBatcher> paymentBatcher) {
         this.paymentProxy = paymentProxy;
+        this.paymentBatcher = paymentBatcher.getIfAvailable();
     }
 
+    /**
+     * With payments.batch.enabled, the payment is sent in a batch with those of other requests, and the
+     * request thread is released while it waits.
+     */
     @PostMapping("/payment")
-    public Payment createPayment(
+    public CompletableFuture<Payment> createPayment(
             @RequestBody Payment payment) {
-        return paymentProxy.createPayment(payment);
+        if (paymentBatcher != null) {
+            return paymentBatcher.createPayment(UUID.randomUUID().toString(), payment);
+        }
+        return CompletableFuture.completedFuture(paymentProxy.createPayment(payment));
     }
 }
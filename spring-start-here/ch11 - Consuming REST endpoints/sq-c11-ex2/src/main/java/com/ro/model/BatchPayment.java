@@ -0,0 +1,16 @@
+package com.ro.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One payment of POST /payments/batch, with the request id that POST /payment gets as a header. In the
+ * response, error is set instead of payment.id when this payment was refused.
+ */
+@Getter
+@Setter
+public class BatchPayment {
+    private String requestId;
+    private Payment payment;
+    private String error;
+}
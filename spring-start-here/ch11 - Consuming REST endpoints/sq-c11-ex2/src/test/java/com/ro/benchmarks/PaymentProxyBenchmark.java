@@ -0,0 +1,81 @@
+package com.ro.benchmarks;
+
+import com.ro.Application;
+import com.ro.clients.proxy.PaymentProxy;
+import com.ro.model.Payment;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sends payments through the PaymentProxy with the plain RestTemplate (payments.http.pooled=false) and with the
+ * pooled keep-alive HttpClient, and prints the throughput and the latency percentiles of the calls. It needs the
+ * sq-c11-payments service running at name.service.url. It is a plain main class (not picked up by surefire); run
+ * it from the IDE or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ro.benchmarks.PaymentProxyBenchmark}.
+ */
+public class PaymentProxyBenchmark {
+
+    private static final int CALLS = 20_000;
+    private static final int[] THREADS = {1, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        for (boolean pooled : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                    "--payments.http.pooled=" + pooled,
+                    "--spring.main.web-application-type=none", "--logging.level.root=WARN")) {
+                PaymentProxy paymentProxy = context.getBean(PaymentProxy.class);
+                for (int threads : THREADS) {
+                    call(paymentProxy, threads, CALLS / 4); //warm-up
+                    long start = System.nanoTime();
+                    long[] latencies = call(paymentProxy, threads, CALLS);
+                    long elapsed = System.nanoTime() - start;
+
+                    Arrays.sort(latencies);
+                    System.out.printf("%-12s %2d threads  %,8.0f calls/s  p50 %6.2f ms  p99 %6.2f ms  max %7.2f ms%n",
+                            pooled ? "pooled" : "RestTemplate",
+                            threads,
+                            CALLS / (elapsed / 1_000_000_000.0),
+                            latencies[latencies.length / 2] / 1_000_000.0,
+                            latencies[latencies.length * 99 / 100] / 1_000_000.0,
+                            latencies[latencies.length - 1] / 1_000_000.0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the latency of every call, in ns
+     */
+    private static long[] call(PaymentProxy paymentProxy, int threads, int calls) throws Exception {
+        long[] latencies = new long[calls / threads * threads];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t * (calls / threads);
+                results.add(executor.submit(() -> {
+                    for (int i = first; i < first + calls / threads; i++) {
+                        Payment payment = new Payment();
+                        payment.setAmount(10);
+                        long start = System.nanoTime();
+                        paymentProxy.createPayment(payment);
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return latencies;
+    }
+}
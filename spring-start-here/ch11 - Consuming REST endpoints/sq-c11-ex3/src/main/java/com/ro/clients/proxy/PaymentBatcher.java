@@ -0,0 +1,147 @@
+package com.ro.clients.proxy;
+
+import com.ro.model.BatchPayment;
+import com.ro.model.Payment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the payments of many concurrent callers as one POST /payments/batch: the payments are buffered until
+ * there are max-size of them or max-wait has passed since the first one, and at most max-in-flight batches
+ * are sent at a time. Every caller's Mono emits its own payment, found by its request id in the response.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "payments.batch.enabled", havingValue = "true")
+public class PaymentBatcher {
+    private final PaymentProxy paymentProxy;
+    private final int maxSize;
+    private final Duration maxWait;
+    private final int maxInFlight;
+    private final Sinks.Many<PendingPayment> sink;
+    private CompletableFuture<Void> done;
+
+    public PaymentBatcher(PaymentProxy paymentProxy,
+                          @Value("${payments.batch.max-size:100}") int maxSize,
+                          @Value("${payments.batch.max-wait:5ms}") Duration maxWait,
+                          @Value("${payments.batch.max-in-flight:8}") int maxInFlight,
+                          @Value("${payments.batch.capacity:10000}") int capacity) {
+        this.paymentProxy = paymentProxy;
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+        this.maxInFlight = maxInFlight;
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacity));
+    }
+
+    @PostConstruct
+    public void start() {
+        // fair backpressure makes bufferTimeout wait for a free flatMap slot instead of failing when
+        // max-in-flight batches are already being sent; the payments wait in the bounded queue of the sink
+        done = sink.asFlux()
+                .bufferTimeout(maxSize, maxWait, true)
+                .flatMap(this::send, maxInFlight)
+                .then()
+                .toFuture();
+    }
+
+    /**
+     * The payment is queued when the Mono is subscribed to, and the Mono fails with a 503 ResponseStatusException
+     * when the queue is full or the batcher is stopped, with a 422 one when the payment is refused by the payments
+     * service, or with the batch it was sent in.
+     */
+    public Mono<Payment> createPayment(String requestId, Payment payment) {
+        return Mono.defer(() -> {
+            Sinks.One<Payment> result = Sinks.one();
+            Sinks.EmitResult emitted;
+            while ((emitted = sink.tryEmitNext(new PendingPayment(requestId, payment, result)))
+                    == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait(); //another caller is queuing its payment
+            }
+            if (emitted == Sinks.EmitResult.FAIL_OVERFLOW) {
+                return Mono.error(unavailable("Too many payments waiting for a batch"));
+            }
+            if (emitted.isFailure()) {
+                return Mono.error(unavailable("Payment batcher stopped"));
+            }
+            return result.asMono();
+        });
+    }
+
+    private Mono<Void> send(List<PendingPayment> batch) {
+        List<BatchPayment> request = new ArrayList<>(batch.size());
+        for (PendingPayment pending : batch) {
+            BatchPayment item = new BatchPayment();
+            item.setRequestId(pending.requestId());
+            item.setPayment(pending.payment());
+            request.add(item);
+        }
+
+        return paymentProxy.createPayments(request)
+                .collectMap(BatchPayment::getRequestId)
+                .doOnNext(results -> complete(batch, results))
+                .doOnError(e -> {
+                    log.warn("Batch of {} payments failed: {}", batch.size(), e.getMessage());
+                    batch.forEach(pending -> pending.result().tryEmitError(e));
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private void complete(List<PendingPayment> batch, Map<String, BatchPayment> results) {
+        for (PendingPayment pending : batch) {
+            BatchPayment result = results.get(pending.requestId());
+            if (result == null) {
+                pending.result().tryEmitError(
+                        new IllegalStateException("No result for payment " + pending.requestId()));
+            } else if (result.getError() != null) {
+                pending.result().tryEmitError(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Payment " + pending.requestId() + " refused: " + result.getError()));
+            } else {
+                pending.result().tryEmitValue(result.getPayment());
+            }
+        }
+    }
+
+    /**
+     * Refuses new payments, sends what is still buffered and waits a few seconds for the batches in flight.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, ExecutionException {
+        while (sink.tryEmitComplete() == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+        try {
+            done.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Payment batches still in flight at shutdown");
+        }
+    }
+
+    /**
+     * A 503: the payment was not sent, and can be tried again later.
+     */
+    private static ResponseStatusException unavailable(String reason) {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, reason);
+    }
+
+    private record PendingPayment(String requestId, Payment payment, Sinks.One<Payment> result) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.ro.clients.proxy;
 
+import com.ro.model.BatchPayment;
 import com.ro.model.Payment;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -9,8 +10,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 @Component
@@ -39,4 +42,17 @@ public class PaymentProxy {
                 .retrieve()
                 .bodyToMono(Payment.class);
     }
+
+    /**
+     * Sends many payments, each with its own request id, in one request.
+     */
+    public Flux<BatchPayment> createPayments(List<BatchPayment> payments) {
+        String uri = paymentsServiceUrl + "/payments/batch";
+
+        return webClient.post()
+                .uri(uri)
+                .bodyValue(payments)
+                .retrieve()
+                .bodyToFlux(BatchPayment.class);
+    }
 }
@@ -1,8 +1,10 @@
 package com.ro.controllers;
 
+import com.ro.clients.proxy.PaymentBatcher;
 import com.ro.clients.proxy.PaymentProxy;
 import com.ro.model.Payment;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,15 +16,23 @@ import java.util.UUID;
 @RestController
 public class PaymentsController {
     private final PaymentProxy paymentProxy;
+    private final PaymentBatcher paymentBatcher;
 
-    public PaymentsController(PaymentProxy paymentProxy) {
+    public PaymentsController(PaymentProxy paymentProxy, ObjectProvider<PaymentBatcher> paymentBatcher) {
         this.paymentProxy = paymentProxy;
+        this.paymentBatcher = paymentBatcher.getIfAvailable();
     }
 
+    /**
+     * With payments.batch.enabled, the payment is sent in a batch with those of other requests.
+     */
     @PostMapping("/payment")
     public Mono<Payment> createPayment(
             @RequestBody Payment payment) {
         String requestId = UUID.randomUUID().toString();
+        if (paymentBatcher != null) {
+            return paymentBatcher.createPayment(requestId, payment);
+        }
         return paymentProxy.createPayment(requestId, payment);
     }
 }
@@ -1,20 +1,27 @@
 package com.ro.controllers;
 
+import com.ro.model.BatchPayment;
 import com.ro.model.Payment;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
 import java.util.UUID;
 
 @Slf4j
 @RestController
 public class PaymentsController {
 
+    @Value("${payments.batch.max-size:1000}")
+    private int maxBatchSize = 1000;
+
     @PostMapping("/payment")
     public ResponseEntity<Payment> createPayment(
             @RequestHeader String requestId,
@@ -28,4 +35,25 @@ public class PaymentsController {
                 .header("requestId", requestId)
                 .body(payment);
     }
+
+    /**
+     * Many payments in one request, e.g. collected by the PaymentBatcher of a client. Every payment is handled
+     * like a POST /payment with its own request id, and the response has them in the same order; a payment
+     * without a request id is refused on its own (error) without failing the others.
+     */
+    @PostMapping("/payments/batch")
+    public List<BatchPayment> createPayments(@RequestBody List<BatchPayment> payments) {
+        if (payments.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxBatchSize + " payments per batch");
+        }
+        for (BatchPayment item : payments) {
+            if (item.getRequestId() == null || item.getRequestId().isBlank() || item.getPayment() == null) {
+                item.setError("requestId and payment are required");
+                continue;
+            }
+            log.info("Received request with Id " + item.getRequestId() + "; Payment Amount: " + item.getPayment().getAmount());
+            item.getPayment().setId(UUID.randomUUID().toString());
+        }
+        return payments;
+    }
 }
@@ -2,8 +2,10 @@ package com.ro;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling //used by the write-behind PurchaseLogFlusher
 public class Application {
 
 	public static void main(String[] args) {
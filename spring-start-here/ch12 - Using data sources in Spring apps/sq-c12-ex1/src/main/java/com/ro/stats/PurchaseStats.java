@@ -0,0 +1,187 @@
+package com.ro.stats;
+
+import com.ro.dto.PricePercentiles;
+import com.ro.dto.ProductRevenue;
+import com.ro.model.Purchase;
+import com.ro.repositories.PurchaseRepository;
+import com.ro.repositories.PurchasesStoredEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Purchase statistics per product (GET /purchase/stats/...), updated purchase by purchase instead of
+ * scanning the purchase table: for every product LongAdders count the purchases and sum the revenue
+ * (in cents), and a QuantileSketch estimates the price percentiles; one more sketch covers all the products.
+ * <p>
+ * The purchases are added when their insert commits (PurchasesStoredEvent), so in the write-behind mode when
+ * PurchaseLogFlusher inserts them. The figures are read one after the other, so while purchases are added
+ * they may be from slightly different moments.
+ * <p>
+ * The statistics are computed from the purchase table when the app starts. If the database can't be reached
+ * then, the first request for statistics tries again. Purchases stored while the table is read may be missed
+ * or counted twice, and purchases inserted with plain SQL need rebuild().
+ */
+@Slf4j
+@Component
+public class PurchaseStats {
+
+    private final PurchaseRepository purchaseRepository;
+    private final double relativeAccuracy;
+    private final Map<String, ProductStats> products = new ConcurrentHashMap<>();
+    private volatile QuantileSketch prices;
+    private volatile boolean built;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(); //the write lock is only taken by rebuild()
+
+    public PurchaseStats(PurchaseRepository purchaseRepository,
+                         @Value("${purchase.stats.relative-accuracy:0.01}") double relativeAccuracy) {
+        this.purchaseRepository = purchaseRepository;
+        this.relativeAccuracy = relativeAccuracy;
+        this.prices = new QuantileSketch(relativeAccuracy);
+    }
+
+    @PostConstruct
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Purchase statistics not computed, will retry on the first request: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the whole purchase table again (PurchaseRepository.forEachPurchase()).
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            built = false;
+            products.clear();
+            prices = new QuantileSketch(relativeAccuracy);
+            purchaseRepository.forEachPurchase(this::add);
+            built = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Computed the statistics of {} purchases of {} products", prices.count(), products.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true) //storePurchase() runs without a transaction
+    public void onPurchasesStored(PurchasesStoredEvent event) {
+        lock.readLock().lock();
+        try {
+            if (built) { //otherwise the purchases are in the table the next rebuild() reads
+                event.purchases().forEach(this::add);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all the products, by name
+     */
+    public List<ProductRevenue> revenueByProduct() {
+        ensureBuilt();
+        return products.entrySet().stream()
+                .map(e -> e.getValue().revenue(e.getKey()))
+                .sorted(Comparator.comparing(ProductRevenue::product))
+                .toList();
+    }
+
+    /**
+     * @return the limit products with the most revenue, the best first
+     */
+    public List<ProductRevenue> topProducts(int limit) {
+        ensureBuilt();
+        Comparator<ProductRevenue> byRevenue = Comparator.comparing(ProductRevenue::revenue);
+        PriorityQueue<ProductRevenue> top = new PriorityQueue<>(byRevenue); //the smallest of the top first
+        products.forEach((product, stats) -> {
+            top.offer(stats.revenue(product));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+        List<ProductRevenue> result = new ArrayList<>(top);
+        result.sort(byRevenue.reversed());
+        return result;
+    }
+
+    /**
+     * @param product null for all the products
+     * @param percentiles between 0 and 100
+     * @return null for a product without purchases
+     */
+    public PricePercentiles pricePercentiles(String product, List<Double> percentiles) {
+        ensureBuilt();
+        QuantileSketch sketch;
+        if (product == null) {
+            sketch = prices;
+        } else {
+            ProductStats stats = products.get(product);
+            if (stats == null) {
+                return null;
+            }
+            sketch = stats.prices;
+        }
+        long count = sketch.count();
+        Map<String, BigDecimal> values = new LinkedHashMap<>();
+        for (double percentile : percentiles) {
+            values.put("p" + BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString(),
+                    count == 0 ? null : BigDecimal.valueOf(sketch.quantile(percentile / 100)).setScale(2, RoundingMode.HALF_EVEN));
+        }
+        return new PricePercentiles(product, count, values);
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            synchronized (this) {
+                if (!built) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    private void add(Purchase purchase) {
+        products.computeIfAbsent(purchase.getProduct(), product -> new ProductStats(relativeAccuracy))
+                .add(purchase.getPrice());
+        prices.add(purchase.getPrice().doubleValue());
+    }
+
+    private static class ProductStats {
+        private final LongAdder purchases = new LongAdder();
+        private final LongAdder revenueCents = new LongAdder();
+        private final QuantileSketch prices;
+
+        ProductStats(double relativeAccuracy) {
+            this.prices = new QuantileSketch(relativeAccuracy);
+        }
+
+        void add(BigDecimal price) {
+            purchases.increment();
+            revenueCents.add(price.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact());
+            prices.add(price.doubleValue());
+        }
+
+        ProductRevenue revenue(String product) {
+            return new ProductRevenue(product, purchases.sum(), BigDecimal.valueOf(revenueCents.sum(), 2));
+        }
+    }
+}
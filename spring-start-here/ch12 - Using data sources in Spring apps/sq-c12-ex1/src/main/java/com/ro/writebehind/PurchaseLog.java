@@ -0,0 +1,222 @@
+package com.ro.writebehind;
+
+import com.ro.model.Purchase;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of the purchases accepted by POST /purchase in the write-behind mode
+ * (purchase.write-behind.enabled=true), until PurchaseLogFlusher inserts them into the purchase table.
+ * <p>
+ * append() writes the purchase at the end of the current segment file and returns once it is on disk.
+ * The fsync is shared: while one is running the other appends keep writing, and the next one makes all
+ * of them durable at once, so under load there are far fewer fsyncs than purchases.
+ * <p>
+ * A record is the length of the rest of the record, a CRC32C of the payload, then the product and the
+ * price as length-prefixed UTF-8. A record cut by a crash fails its length or CRC check and marks the end
+ * of the segment. Segments are named after an increasing number; roll() closes the current one so it can
+ * be flushed and deleted while the appends go on in the next one.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "purchase.write-behind.enabled", havingValue = "true")
+public class PurchaseLog {
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "purchases-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final Object syncLock = new Object(); //taken before this when both are needed
+    private FileChannel segment;
+    private Path segmentFile;
+    private long segmentNumber;
+    private long segmentStart; //appended when the segment was started
+    private long appended; //bytes written since the start of the app, in all segments
+    private volatile long synced; //how much of appended is on disk
+
+    public PurchaseLog(@Value("${purchase.write-behind.directory:purchase-wal}") Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        if (!segments.isEmpty()) {
+            segmentNumber = number(segments.get(segments.size() - 1));
+            log.info("{} purchase log segments in {} will be replayed", segments.size(), directory.toAbsolutePath());
+        }
+        open(segmentNumber + 1);
+    }
+
+    /**
+     * Returns once the purchase is written and fsynced.
+     */
+    public void append(Purchase purchase) {
+        ByteBuffer record = encode(purchase);
+        long end;
+        synchronized (this) {
+            try {
+                while (record.hasRemaining()) {
+                    segment.write(record);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            appended += record.limit();
+            end = appended;
+        }
+        sync(end);
+    }
+
+    /**
+     * Closes the current segment, unless nothing was appended to it, and starts a new one.
+     *
+     * @return the closed segments, oldest first, including the ones left by a previous run
+     */
+    public List<Path> roll() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (appended > segmentStart) {
+                    segment.force(false);
+                    segment.close();
+                    synced = appended;
+                    open(segmentNumber + 1);
+                }
+            }
+        }
+        Path current = currentSegment();
+        return segments().stream()
+                .filter(s -> !s.equals(current))
+                .toList();
+    }
+
+    public synchronized Path currentSegment() {
+        return segmentFile;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                segment.force(false);
+                segment.close();
+                if (appended == segmentStart) {
+                    Files.delete(segmentFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the purchases of a segment in order, stopping at the end of the file or at the first
+     * incomplete or corrupt record.
+     */
+    public static void read(Path segmentFile, Consumer<Purchase> consumer) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(segmentFile));
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int length = in.remaining() >= HEADER_SIZE ? in.getInt() : -1;
+            int checksum = length >= 0 ? in.getInt() : 0;
+            if (length < 0 || length > in.remaining() || checksum != checksum(in, length)) {
+                log.warn("Purchase log {} ends with an incomplete record at byte {}", segmentFile, start);
+                return;
+            }
+            Purchase purchase = new Purchase();
+            purchase.setProduct(readString(in));
+            purchase.setPrice(new BigDecimal(readString(in)));
+            consumer.accept(purchase);
+        }
+    }
+
+    /**
+     * The first thread taking the lock fsyncs everything appended so far; the ones waiting behind it
+     * usually find their records already covered and return without another fsync.
+     */
+    private void sync(long end) {
+        if (synced >= end) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                channel = segment;
+                target = appended;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            synced = target;
+        }
+    }
+
+    private void open(long number) throws IOException {
+        segmentNumber = number;
+        segmentFile = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentStart = appended;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted() //the number is zero-padded, so names sort like numbers
+                    .toList();
+        }
+    }
+
+    private static long number(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(Purchase purchase) {
+        if (purchase.getProduct() == null || purchase.getPrice() == null) {
+            throw new IllegalArgumentException("A purchase needs a product and a price");
+        }
+        byte[] product = purchase.getProduct().getBytes(StandardCharsets.UTF_8);
+        byte[] price = purchase.getPrice().toPlainString().getBytes(StandardCharsets.UTF_8);
+        int length = 2 * Integer.BYTES + product.length + price.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.putInt(length).putInt(0)
+                .putInt(product.length).put(product)
+                .putInt(price.length).put(price);
+        record.putInt(Integer.BYTES, checksum(record.position(HEADER_SIZE), length));
+        return record.rewind();
+    }
+
+    /**
+     * CRC32C of the next length bytes of the buffer, which keeps its position.
+     */
+    private static int checksum(ByteBuffer buffer, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(buffer.position(), length));
+        return (int) crc.getValue();
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
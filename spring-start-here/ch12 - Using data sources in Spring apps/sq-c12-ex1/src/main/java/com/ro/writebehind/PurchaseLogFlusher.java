@@ -0,0 +1,76 @@
+package com.ro.writebehind;
+
+import com.ro.model.Purchase;
+import com.ro.repositories.PurchaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the purchases of the PurchaseLog to the purchase table every purchase.write-behind.flush-interval ms:
+ * rolls the log, inserts each closed segment with one batch (PurchaseRepository.storePurchases()) and deletes
+ * the segment once the insert is committed. The first run, right after the app started, replays the segments
+ * left by the previous run.
+ * <p>
+ * A segment whose insert fails stays on disk and is tried again on the next run, so purchases wait out a
+ * database outage in the log. If the database rejects the data itself, the purchases of the segment are
+ * inserted one by one and the rejected ones are logged and dropped, so they can't block the log forever.
+ * Delivery is at least once: a crash between the commit and the deletion of a segment inserts it again on
+ * restart.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "purchase.write-behind.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class PurchaseLogFlusher {
+
+    private final PurchaseLog purchaseLog;
+    private final PurchaseRepository purchaseRepository;
+
+    @Scheduled(fixedDelayString = "${purchase.write-behind.flush-interval:200}")
+    public synchronized void flush() throws IOException {
+        for (Path segment : purchaseLog.roll()) {
+            List<Purchase> purchases = new ArrayList<>();
+            PurchaseLog.read(segment, purchases::add);
+            try {
+                purchaseRepository.storePurchases(purchases);
+            } catch (DataIntegrityViolationException e) {
+                storeOneByOne(segment, purchases);
+            } catch (DataAccessException e) {
+                log.warn("Purchase log {} not flushed, will retry: {}", segment.getFileName(), e.getMessage());
+                return; //the later segments too, to keep the insert order
+            }
+            Files.delete(segment);
+        }
+    }
+
+    /**
+     * Last flush of what was appended before the shutdown; later appends wait in the log for the next start.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void storeOneByOne(Path segment, List<Purchase> purchases) {
+        for (Purchase purchase : purchases) {
+            try {
+                purchaseRepository.storePurchases(List.of(purchase));
+            } catch (DataIntegrityViolationException e) {
+                log.error("Purchase of {} for {} from {} rejected by the database, dropped: {}",
+                        purchase.getProduct(), purchase.getPrice(), segment.getFileName(), e.getMessage());
+            }
+        }
+    }
+}
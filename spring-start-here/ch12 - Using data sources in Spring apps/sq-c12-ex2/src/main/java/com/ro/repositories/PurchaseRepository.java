@@ -1,37 +1,118 @@
 package com.ro.repositories;
 
+import com.ro.jdbc.CompiledRowMapper;
 import com.ro.model.Purchase;
-import lombok.RequiredArgsConstructor;
+import com.ro.writebehind.PurchaseLog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Repository
-@RequiredArgsConstructor
 public class PurchaseRepository {
 
     private final JdbcTemplate jdbc;
+    private final PurchaseLog purchaseLog; //null unless purchase.write-behind.enabled=true
+    private final ApplicationEventPublisher eventPublisher;
 
+    @Value("${purchase.batch.size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${purchase.batch.multi-row-insert:false}")
+    private boolean multiRowInsert;
+
+    @Value("${purchase.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    private final CompiledRowMapper<Purchase> purchaseReader = CompiledRowMapper.of(Purchase.class);
+
+    public PurchaseRepository(JdbcTemplate jdbc, ObjectProvider<PurchaseLog> purchaseLog,
+                              ApplicationEventPublisher eventPublisher) {
+        this.jdbc = jdbc;
+        this.purchaseLog = purchaseLog.getIfAvailable();
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * In the write-behind mode the purchase is only appended to the PurchaseLog, and PurchaseLogFlusher inserts
+     * it a bit later together with the others: the caller waits for a file append instead of an INSERT, but
+     * findAllPurchases() and forEachPurchase() don't see the purchase until it is flushed.
+     */
     public void storePurchase(Purchase purchase) {
+        if (purchaseLog != null) {
+            purchaseLog.append(purchase);
+            return;
+        }
         String sql = "INSERT INTO purchase (product, price) VALUES(?, ?)";
         jdbc.update(sql, purchase.getProduct(), purchase.getPrice());
+        eventPublisher.publishEvent(new PurchasesStoredEvent(List.of(purchase)));
+    }
+
+    /**
+     * Stores all the purchases in one transaction, sending batch.size rows per round-trip: either as a JDBC
+     * batch of single-row INSERTs, or (purchase.batch.multi-row-insert=true) as one multi-row
+     * INSERT ... VALUES (?, ?), (?, ?), ... statement. Drivers that can rewrite a JDBC batch into multi-row
+     * INSERTs themselves (MySQL with rewriteBatchedStatements=true) get the same gain from the first way.
+     */
+    @Transactional
+    public void storePurchases(List<Purchase> purchases) {
+        if (!multiRowInsert) {
+            String sql = "INSERT INTO purchase (product, price) VALUES(?, ?)";
+            jdbc.batchUpdate(sql, purchases, batchSize, (ps, purchase) -> {
+                ps.setString(1, purchase.getProduct());
+                ps.setBigDecimal(2, purchase.getPrice());
+            });
+            eventPublisher.publishEvent(new PurchasesStoredEvent(purchases));
+            return;
+        }
+
+        for (int from = 0; from < purchases.size(); from += batchSize) {
+            List<Purchase> rows = purchases.subList(from, Math.min(from + batchSize, purchases.size()));
+            String sql = "INSERT INTO purchase (product, price) VALUES" + String.join(",", Collections.nCopies(rows.size(), "(?, ?)"));
+            jdbc.update(sql, ps -> {
+                int parameter = 1;
+                for (Purchase purchase : rows) {
+                    ps.setString(parameter++, purchase.getProduct());
+                    ps.setBigDecimal(parameter++, purchase.getPrice());
+                }
+            });
+        }
+        eventPublisher.publishEvent(new PurchasesStoredEvent(purchases));
     }
 
     public List<Purchase> findAllPurchases() {
         String sql = "SELECT * FROM purchase";
+        return jdbc.query(sql, purchaseReader.rowMapper());
+    }
 
-        RowMapper<Purchase> purchaseRowMapper = (r, i) -> {  //r = ResultSet, i = row number
-            Purchase rowObject = new Purchase();
-            rowObject.setId(r.getInt("id"));
-            rowObject.setProduct(r.getString("product"));
-            rowObject.setPrice(r.getBigDecimal("price"));
-
-            return rowObject;
+    /**
+     * Passes the purchases to the consumer one at a time, while the rows are read through a forward-only
+     * cursor that fetches purchase.export.fetch-size rows per round-trip, so the table is never held in memory.
+     * Whether the driver really streams depends on it: MySQL needs useCursorFetch=true, H2 needs
+     * LAZY_QUERY_EXECUTION=TRUE, otherwise the whole result is read before the first row is returned.
+     */
+    public void forEachPurchase(Consumer<Purchase> consumer) {
+        String sql = "SELECT * FROM purchase";
+        PreparedStatementCreator cursor = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
         };
-
-        return jdbc.query(sql, purchaseRowMapper);
+        RowMapper<Purchase> rowMapper = purchaseReader.rowMapper();
+        jdbc.query(cursor, r -> {
+            consumer.accept(rowMapper.mapRow(r, r.getRow()));
+        });
     }
 }
@@ -0,0 +1,11 @@
+package com.ro.repositories;
+
+import com.ro.model.Purchase;
+
+import java.util.List;
+
+/**
+ * Published by PurchaseRepository for the purchases it inserted, once per call.
+ */
+public record PurchasesStoredEvent(List<Purchase> purchases) {
+}
@@ -1,14 +1,23 @@
 package com.ro.config;
 
+import com.ro.repositories.PurchaseShards;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
+@EnableScheduling //used by the write-behind PurchaseLogFlusher and PurchaseRepository.purgeBatchKeys()
 public class ProjectConfig {
     @Value("${custom.datasource.url}")
     private String datasourceUrl;
@@ -19,12 +28,68 @@ public class ProjectConfig {
     @Value("${custom.datasource.password}")
     private String datasourcePassword;
 
+    @Value("${custom.datasource.rewrite-batched-statements:false}")
+    private boolean rewriteBatchedStatements;
+
+    @Value("${custom.datasource.use-cursor-fetch:false}")
+    private boolean useCursorFetch;
+
+    @Value("${custom.datasource.shard-urls:}")
+    private List<String> shardUrls;
+
+    @Value("${custom.datasource.pool.min-size:2}")
+    private int poolMinSize = 2;
+
+    @Value("${custom.datasource.pool.initial-size:10}")
+    private int poolInitialSize = 10;
+
+    /**
+     * The database of custom.datasource.url, or the first shard when the purchases are sharded.
+     */
     @Bean
-    public DataSource dataSource() {
+    public DataSource dataSource(MeterRegistry meterRegistry) {
+        return shardUrls.isEmpty()
+                ? dataSource(datasourceUrl, null, meterRegistry)
+                : dataSource(shardUrls.get(0), "purchase-shard-0", meterRegistry);
+    }
+
+    /**
+     * One shard per URL of custom.datasource.shard-urls, each with its own pool, or just the dataSource bean.
+     * Spring Boot initializes the schema of the dataSource bean (spring.sql.init.*); the other shards are
+     * initialized here with the same settings, e.g. the schema.sql of embedded H2 shards.
+     */
+    @Bean
+    public PurchaseShards purchaseShards(DataSource dataSource, SqlInitializationProperties sqlInitialization,
+                                         MeterRegistry meterRegistry) {
+        List<DataSource> shards = new ArrayList<>(List.of(dataSource));
+        for (int i = 1; i < shardUrls.size(); i++) {
+            HikariDataSource shard = dataSource(shardUrls.get(i), "purchase-shard-" + i, meterRegistry);
+            new SqlDataSourceScriptDatabaseInitializer(shard, sqlInitialization).initializeDatabase();
+            shards.add(shard);
+        }
+        return new PurchaseShards(shards);
+    }
+
+    /**
+     * The pool starts with custom.datasource.pool.initial-size connections at most (AdaptivePoolSizer may change
+     * that later) and keeps min-size idle ones. Its metrics are the hikaricp.connections.* meters, for every
+     * shard: Spring Boot would only register the ones of the dataSource bean.
+     */
+    private HikariDataSource dataSource(String url, String poolName, MeterRegistry meterRegistry) {
         HikariDataSource dataSource = new HikariDataSource();
-        dataSource.setJdbcUrl(datasourceUrl);
+        dataSource.setJdbcUrl(url);
         dataSource.setUsername(datasourceUsername);
         dataSource.setPassword(datasourcePassword);
+        if (poolName != null) {
+            dataSource.setPoolName(poolName);
+        }
+        dataSource.setMaximumPoolSize(poolInitialSize);
+        dataSource.setMinimumIdle(Math.min(poolMinSize, poolInitialSize));
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        if (url.startsWith("jdbc:mysql:")) {
+            dataSource.addDataSourceProperty("rewriteBatchedStatements", rewriteBatchedStatements);
+            dataSource.addDataSourceProperty("useCursorFetch", useCursorFetch);
+        }
 
         return dataSource;
     }
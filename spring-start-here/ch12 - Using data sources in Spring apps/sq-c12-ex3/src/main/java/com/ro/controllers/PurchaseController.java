@@ -1,11 +1,26 @@
 package com.ro.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ro.dto.PricePercentiles;
+import com.ro.dto.ProductRevenue;
 import com.ro.model.Purchase;
 import com.ro.repositories.PurchaseRepository;
+import com.ro.stats.PurchaseStats;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/purchase")
@@ -13,16 +28,114 @@ import java.util.List;
 public class PurchaseController {
 
     private final PurchaseRepository purchaseRepository;
+    private final PurchaseStats purchaseStats;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public void storePurchase(@RequestBody Purchase purchase) {
         purchaseRepository.storePurchase(purchase);
     }
 
+    /**
+     * For uploads of many purchases at once, e.g. the end-of-shift file of a POS terminal. If the upload fails,
+     * some shards may already have stored their purchases: retrying it with the same Idempotency-Key stores
+     * only the others.
+     */
+    @PostMapping("/batch")
+    public void storePurchases(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                               @RequestBody List<Purchase> purchases) {
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > 64)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key must have 1 to 64 characters");
+        }
+        purchaseRepository.storePurchases(purchases, idempotencyKey);
+    }
+
     @GetMapping
     public List<Purchase> findPurchases() {
         return purchaseRepository.findAllPurchases();
     }
 
+    /**
+     * Revenue and number of purchases of every product, from PurchaseStats instead of a scan of the table.
+     */
+    @GetMapping("/stats/products")
+    public List<ProductRevenue> getRevenueByProduct() {
+        return purchaseStats.revenueByProduct();
+    }
+
+    @GetMapping("/stats/products/top")
+    public List<ProductRevenue> getTopProducts(@RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
+        }
+        return purchaseStats.topProducts(limit);
+    }
+
+    /**
+     * Estimated price percentiles (within purchase.stats.relative-accuracy), of one product or of all of them.
+     */
+    @GetMapping("/stats/prices")
+    public PricePercentiles getPricePercentiles(@RequestParam(required = false) String product,
+                                                @RequestParam(defaultValue = "50,90,99") List<Double> percentiles) {
+        if (percentiles.stream().anyMatch(p -> p < 0 || p > 100)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "percentiles must be between 0 and 100");
+        }
+        PricePercentiles result = purchaseStats.pricePercentiles(product, percentiles);
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No purchases of " + product);
+        }
+        return result;
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPurchases() {
+        return export(MediaType.APPLICATION_JSON);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPurchasesAsNdjson() {
+        return export(MediaType.APPLICATION_NDJSON);
+    }
+
+    /**
+     * Like findPurchases(), but the purchases are written to the response while their rows are read
+     * (PurchaseRepository.forEachPurchase()) instead of being collected in a list first: as the elements
+     * of a JSON array, or one per line for NDJSON. The first one is flushed right away, so the client gets
+     * the first bytes while the query still runs; after that the output is flushed when its buffer is full.
+     */
+    private ResponseEntity<StreamingResponseBody> export(MediaType mediaType) {
+        boolean ndjson = mediaType.equals(MediaType.APPLICATION_NDJSON);
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = writer.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                if (!ndjson) {
+                    generator.writeStartArray();
+                }
+                AtomicBoolean first = new AtomicBoolean(true);
+                purchaseRepository.forEachPurchase(purchase -> {
+                    try {
+                        writer.writeValue(generator, purchase);
+                        if (ndjson) {
+                            generator.writeRaw('\n');
+                        }
+                        if (first.compareAndSet(true, false)) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(body);
+    }
+
 
 }
@@ -0,0 +1,11 @@
+package com.ro.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Response of GET /purchase/stats/prices: the estimated prices by percentile ("p50", "p99.9"...), for one
+ * product or (product null) for all the purchases. The percentiles are null when there are no purchases.
+ */
+public record PricePercentiles(String product, long purchases, Map<String, BigDecimal> percentiles) {
+}
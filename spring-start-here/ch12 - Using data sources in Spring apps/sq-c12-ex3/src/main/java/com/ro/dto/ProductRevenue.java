@@ -0,0 +1,9 @@
+package com.ro.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * One product in the responses of GET /purchase/stats/products and GET /purchase/stats/products/top.
+ */
+public record ProductRevenue(String product, long purchases, BigDecimal revenue) {
+}
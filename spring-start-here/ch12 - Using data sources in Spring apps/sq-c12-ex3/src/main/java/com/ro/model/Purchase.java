@@ -8,7 +8,7 @@ import java.math.BigDecimal;
 @Getter
 @Setter
 public class Purchase {
-    private int id;
+    private long id;
     private String product;
     private BigDecimal price;
 }
@@ -0,0 +1,130 @@
+package com.ro.pool;
+
+import com.ro.repositories.PurchaseShards;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the maximum size of the purchase pools (one per shard) every custom.datasource.pool.adjust-interval ms,
+ * between custom.datasource.pool.min-size and max-size, from what the pool metrics (hikaricp.connections.*)
+ * show for the last interval:
+ * <ul>
+ *     <li>threads waiting for a connection, or a mean acquire time above target-acquire-time: the pool grows by
+ *     the number of waiting threads (at least 1), unless the connections are already held longer than
+ *     max-usage-time on average, meaning the database is slow and more connections would only load it more;</li>
+ *     <li>on average less than half the pool in use (the usage time of the interval divided by its length,
+ *     Little's law): the pool shrinks by 1. The connections above the new size are closed by Hikari once they
+ *     have been idle for idleTimeout, since minimumIdle is min-size.</li>
+ * </ul>
+ * Growing is fast and shrinking slow, so a peak gets its connections at once and the night gives them back
+ * over a few minutes. Every change counts in datasource.pool.resizes{pool, direction}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "custom.datasource.pool.adaptive", havingValue = "true")
+public class AdaptivePoolSizer {
+
+    private final PurchaseShards purchaseShards;
+    private final MeterRegistry meterRegistry;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetAcquireMillis;
+    private final double maxUsageMillis;
+    private final Map<String, Sample> lastSamples = new HashMap<>();
+
+    public AdaptivePoolSizer(PurchaseShards purchaseShards,
+                             MeterRegistry meterRegistry,
+                             @Value("${custom.datasource.pool.min-size:2}") int minSize,
+                             @Value("${custom.datasource.pool.max-size:50}") int maxSize,
+                             @Value("${custom.datasource.pool.target-acquire-time:5}") double targetAcquireMillis,
+                             @Value("${custom.datasource.pool.max-usage-time:100}") double maxUsageMillis) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("custom.datasource.pool needs 1 <= min-size <= max-size");
+        }
+        this.purchaseShards = purchaseShards;
+        this.meterRegistry = meterRegistry;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetAcquireMillis = targetAcquireMillis;
+        this.maxUsageMillis = maxUsageMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${custom.datasource.pool.adjust-interval:5000}",
+            initialDelayString = "${custom.datasource.pool.adjust-interval:5000}")
+    public synchronized void adjust() {
+        for (PurchaseShards.Shard shard : purchaseShards.all()) {
+            if (shard.jdbc().getDataSource() instanceof HikariDataSource pool && pool.isRunning()) {
+                adjust(pool);
+            }
+        }
+    }
+
+    private void adjust(HikariDataSource pool) {
+        String name = pool.getPoolName();
+        Sample sample = sample(name);
+        Sample last = lastSamples.put(name, sample);
+        if (sample == null || last == null) {
+            return;
+        }
+
+        long acquired = sample.acquireCount() - last.acquireCount();
+        long used = sample.usageCount() - last.usageCount();
+        double meanAcquireMillis = acquired == 0 ? 0 : (sample.acquireMillis() - last.acquireMillis()) / acquired;
+        double meanUsageMillis = used == 0 ? 0 : (sample.usageMillis() - last.usageMillis()) / used;
+        double inUse = (sample.usageMillis() - last.usageMillis()) / (sample.time() - last.time());
+
+        HikariPoolMXBean stats = pool.getHikariPoolMXBean();
+        HikariConfigMXBean config = pool.getHikariConfigMXBean();
+        int waiting = stats.getThreadsAwaitingConnection();
+        int size = config.getMaximumPoolSize();
+        int newSize = size;
+        if (waiting > 0 || meanAcquireMillis > targetAcquireMillis) {
+            if (meanUsageMillis > maxUsageMillis) {
+                log.debug("Pool {} not grown, connections held {} ms on average", name, meanUsageMillis);
+            } else {
+                newSize = Math.min(maxSize, size + Math.max(1, waiting));
+            }
+        } else if (inUse * 2 < size) {
+            newSize = Math.max(minSize, size - 1);
+        }
+        newSize = Math.max(minSize, Math.min(maxSize, newSize)); //also after a change of the bounds
+
+        if (newSize != size) {
+            config.setMaximumPoolSize(newSize);
+            meterRegistry.counter("datasource.pool.resizes", "pool", name, "direction", newSize > size ? "up" : "down")
+                    .increment();
+            log.info("Pool {} resized from {} to {}: {} waiting, acquire {} ms, usage {} ms, {} in use on average",
+                    name, size, newSize, waiting, String.format("%.2f", meanAcquireMillis),
+                    String.format("%.2f", meanUsageMillis), String.format("%.1f", inUse));
+        }
+    }
+
+    /**
+     * The totals of the acquire and usage timers Hikari records for the pool, null if they aren't registered.
+     */
+    private Sample sample(String pool) {
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", pool).timer();
+        Timer usage = meterRegistry.find("hikaricp.connections.usage").tag("pool", pool).timer();
+        if (acquire == null || usage == null) {
+            return null;
+        }
+        return new Sample(System.nanoTime() / 1_000_000.0,
+                acquire.count(), acquire.totalTime(TimeUnit.MILLISECONDS),
+                usage.count(), usage.totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    private record Sample(double time, long acquireCount, double acquireMillis, long usageCount, double usageMillis) {
+    }
+}
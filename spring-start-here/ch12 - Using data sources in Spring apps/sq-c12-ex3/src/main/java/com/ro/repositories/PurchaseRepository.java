@@ -1,37 +1,202 @@
 package com.ro.repositories;
 
+import com.ro.jdbc.CompiledRowMapper;
 import com.ro.model.Purchase;
-import lombok.RequiredArgsConstructor;
+import com.ro.writebehind.PurchaseLog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Repository
-@RequiredArgsConstructor
 public class PurchaseRepository {
 
-    private final JdbcTemplate jdbc;
+    private final PurchaseShards shards;
+    private final PurchaseLog purchaseLog; //null unless purchase.write-behind.enabled=true
+    private final ApplicationEventPublisher eventPublisher;
 
+    @Value("${purchase.batch.size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${purchase.batch.multi-row-insert:false}")
+    private boolean multiRowInsert;
+
+    @Value("${purchase.batch.key-retention:7d}")
+    private Duration batchKeyRetention = Duration.ofDays(7);
+
+    @Value("${purchase.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    private final CompiledRowMapper<Purchase> purchaseReader = CompiledRowMapper.of(Purchase.class);
+
+    public PurchaseRepository(PurchaseShards shards, ObjectProvider<PurchaseLog> purchaseLog,
+                              ApplicationEventPublisher eventPublisher) {
+        this.shards = shards;
+        this.purchaseLog = purchaseLog.getIfAvailable();
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * In the write-behind mode the purchase is only appended to the PurchaseLog, and PurchaseLogFlusher inserts
+     * it a bit later together with the others: the caller waits for a file append instead of an INSERT, but
+     * findAllPurchases() and forEachPurchase() don't see the purchase until it is flushed.
+     */
     public void storePurchase(Purchase purchase) {
+        if (purchaseLog != null) {
+            purchaseLog.append(purchase);
+            return;
+        }
         String sql = "INSERT INTO purchase (product, price) VALUES(?, ?)";
-        jdbc.update(sql, purchase.getProduct(), purchase.getPrice());
+        shards.shardFor(purchase.getProduct()).jdbc().update(sql, purchase.getProduct(), purchase.getPrice());
+        eventPublisher.publishEvent(new PurchasesStoredEvent(List.of(purchase)));
+    }
+
+    public void storePurchases(List<Purchase> purchases) {
+        storePurchases(purchases, null);
+    }
+
+    /**
+     * Stores the purchases of each shard in one transaction, shard after shard, so if a shard fails the purchases
+     * of the shards before it stay stored. The batch key (at most 64 characters, or null) is inserted into the
+     * purchase_batch table of each shard in the same transaction as its purchases, and a shard that already has
+     * it is skipped: a retry of the failed batch with the same key only stores the shards that were missing.
+     * The keys are kept purchase.batch.key-retention (see purgeBatchKeys()).
+     * <p>
+     * Sends batch.size rows per round-trip: either as a JDBC batch of single-row INSERTs, or
+     * (purchase.batch.multi-row-insert=true) as one multi-row INSERT ... VALUES (?, ?), (?, ?), ... statement.
+     * Drivers that can rewrite a JDBC batch into multi-row INSERTs themselves (MySQL with
+     * rewriteBatchedStatements=true) get the same gain from the first way.
+     */
+    public void storePurchases(List<Purchase> purchases, String batchKey) {
+        Map<PurchaseShards.Shard, List<Purchase>> byShard = new LinkedHashMap<>();
+        for (Purchase purchase : purchases) {
+            byShard.computeIfAbsent(shards.shardFor(purchase.getProduct()), shard -> new ArrayList<>()).add(purchase);
+        }
+        byShard.forEach((shard, rows) -> shard.transaction().executeWithoutResult(status -> {
+            if (batchKey != null && !recordBatch(shard.jdbc(), batchKey)) {
+                return;
+            }
+            insert(shard.jdbc(), rows);
+            eventPublisher.publishEvent(new PurchasesStoredEvent(rows)); //handled when this shard commits
+        }));
+    }
+
+    /**
+     * @return false if the shard already has the batch key, committed or still being inserted by another
+     * transaction (which the INSERT waits for)
+     */
+    private static boolean recordBatch(JdbcTemplate jdbc, String batchKey) {
+        try {
+            jdbc.update("INSERT INTO purchase_batch (batch_key) VALUES(?)", batchKey);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
     }
 
+    /**
+     * Tells whether the shard of a purchase has committed the batch with the given key. Each shard is only
+     * queried once, the first time one of its purchases is tested.
+     */
+    public Predicate<Purchase> batchStored(String batchKey) {
+        Map<PurchaseShards.Shard, Boolean> stored = new HashMap<>();
+        String sql = "SELECT COUNT(*) FROM purchase_batch WHERE batch_key = ?";
+        return purchase -> stored.computeIfAbsent(shards.shardFor(purchase.getProduct()),
+                shard -> shard.jdbc().queryForObject(sql, Integer.class, batchKey) > 0);
+    }
+
+    @Scheduled(fixedDelayString = "${purchase.batch.key-purge-interval:3600000}",
+            initialDelayString = "${purchase.batch.key-purge-interval:3600000}")
+    public void purgeBatchKeys() {
+        Timestamp before = Timestamp.from(Instant.now().minus(batchKeyRetention));
+        for (PurchaseShards.Shard shard : shards.all()) {
+            shard.jdbc().update("DELETE FROM purchase_batch WHERE created_at < ?", before);
+        }
+    }
+
+    private void insert(JdbcTemplate jdbc, List<Purchase> purchases) {
+        if (!multiRowInsert) {
+            String sql = "INSERT INTO purchase (product, price) VALUES(?, ?)";
+            jdbc.batchUpdate(sql, purchases, batchSize, (ps, purchase) -> {
+                ps.setString(1, purchase.getProduct());
+                ps.setBigDecimal(2, purchase.getPrice());
+            });
+            return;
+        }
+
+        for (int from = 0; from < purchases.size(); from += batchSize) {
+            List<Purchase> rows = purchases.subList(from, Math.min(from + batchSize, purchases.size()));
+            String sql = "INSERT INTO purchase (product, price) VALUES" + String.join(",", Collections.nCopies(rows.size(), "(?, ?)"));
+            jdbc.update(sql, ps -> {
+                int parameter = 1;
+                for (Purchase purchase : rows) {
+                    ps.setString(parameter++, purchase.getProduct());
+                    ps.setBigDecimal(parameter++, purchase.getPrice());
+                }
+            });
+        }
+    }
+
+    /**
+     * Queries all the shards in parallel and returns their purchases one shard after the other.
+     */
     public List<Purchase> findAllPurchases() {
         String sql = "SELECT * FROM purchase";
+        return shards.queryAll(shard -> shard.jdbc().query(sql, purchaseMapper(shard)));
+    }
 
-        RowMapper<Purchase> purchaseRowMapper = (r, i) -> {  //r = ResultSet, i = row number
-            Purchase rowObject = new Purchase();
-            rowObject.setId(r.getInt("id"));
-            rowObject.setProduct(r.getString("product"));
-            rowObject.setPrice(r.getBigDecimal("price"));
-
-            return rowObject;
+    /**
+     * Passes the purchases to the consumer one at a time, while the rows are read through a forward-only
+     * cursor that fetches purchase.export.fetch-size rows per round-trip, so the table is never held in memory.
+     * Whether the driver really streams depends on it: MySQL needs useCursorFetch=true, H2 needs
+     * LAZY_QUERY_EXECUTION=TRUE, otherwise the whole result is read before the first row is returned.
+     * The shards are read one after the other, so the consumer is only called from this thread.
+     */
+    public void forEachPurchase(Consumer<Purchase> consumer) {
+        String sql = "SELECT * FROM purchase";
+        PreparedStatementCreator cursor = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
         };
+        for (PurchaseShards.Shard shard : shards.all()) {
+            RowMapper<Purchase> rowMapper = purchaseMapper(shard);
+            shard.jdbc().query(cursor, r -> {
+                consumer.accept(rowMapper.mapRow(r, r.getRow()));
+            });
+        }
+    }
 
-        return jdbc.query(sql, purchaseRowMapper);
+    /**
+     * Reads the purchases of the shard with their Shard.globalId() as id.
+     */
+    private RowMapper<Purchase> purchaseMapper(PurchaseShards.Shard shard) {
+        RowMapper<Purchase> rowMapper = purchaseReader.rowMapper();
+        return (rs, rowNum) -> {
+            Purchase purchase = rowMapper.mapRow(rs, rowNum);
+            purchase.setId(shard.globalId(purchase.getId()));
+            return purchase;
+        };
     }
 }
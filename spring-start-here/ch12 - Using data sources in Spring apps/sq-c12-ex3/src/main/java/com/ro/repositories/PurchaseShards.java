@@ -0,0 +1,100 @@
+package com.ro.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * The databases the purchases are spread over (see ProjectConfig), each with its own pool and transactions.
+ * A purchase goes to the shard chosen by the hash of its product, so all the purchases of a product are in
+ * the same shard. Changing the number of shards moves most products to another shard, and the purchases
+ * already stored are not moved. With a single shard this is just the dataSource bean.
+ * <p>
+ * The table ids come from the AUTO_INCREMENT of each shard, so they are only unique within a shard; the
+ * purchases read from a shard get Shard.globalId() of them instead. That id holds the index of the shard,
+ * so the order of custom.datasource.shard-urls must not change once purchases are stored.
+ */
+public class PurchaseShards implements AutoCloseable {
+
+    private final List<Shard> shards;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PurchaseShards(List<DataSource> dataSources) {
+        List<Shard> shards = new ArrayList<>(dataSources.size());
+        for (DataSource dataSource : dataSources) {
+            shards.add(new Shard(shards.size(), new JdbcTemplate(dataSource),
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource))));
+        }
+        this.shards = List.copyOf(shards);
+    }
+
+    public Shard shardFor(String product) {
+        int hash = Objects.hashCode(product);
+        return shards.get(Math.floorMod(hash ^ (hash >>> 16), shards.size()));
+    }
+
+    public List<Shard> all() {
+        return shards;
+    }
+
+    /**
+     * Runs the query on all the shards at the same time, each on a virtual thread.
+     *
+     * @return the rows of the first shard, then the rows of the second one...
+     */
+    public <T> List<T> queryAll(Function<Shard, List<T>> query) {
+        if (shards.size() == 1) {
+            return query.apply(shards.get(0));
+        }
+        List<CompletableFuture<List<T>>> results = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), executor))
+                .toList();
+        List<T> rows = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<T>> result : results) {
+                rows.addAll(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return rows;
+    }
+
+    /**
+     * Closes the pools, the one of the dataSource bean included (closing a HikariDataSource twice is harmless).
+     */
+    @Override
+    public void close() {
+        executor.close();
+        for (Shard shard : shards) {
+            if (shard.jdbc().getDataSource() instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+
+    public record Shard(int index, JdbcTemplate jdbc, TransactionTemplate transaction) {
+
+        /**
+         * The id of a purchase of this shard among the purchases of all the shards: the index of the shard
+         * in the top 16 bits, the id of the row in this shard below them.
+         */
+        public long globalId(long id) {
+            return (long) index << 48 | id;
+        }
+    }
+}
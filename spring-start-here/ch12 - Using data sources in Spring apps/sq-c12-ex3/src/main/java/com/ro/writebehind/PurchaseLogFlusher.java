@@ -0,0 +1,87 @@
+package com.ro.writebehind;
+
+import com.ro.model.Purchase;
+import com.ro.repositories.PurchaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Moves the purchases of the PurchaseLog to the purchase table every purchase.write-behind.flush-interval ms:
+ * rolls the log, inserts each closed segment with one batch (PurchaseRepository.storePurchases()) and deletes
+ * the segment once the insert is committed. The first run, right after the app started, replays the segments
+ * left by the previous run.
+ * <p>
+ * A segment whose insert fails stays on disk and is tried again on the next run, so purchases wait out a
+ * database outage in the log. If the database rejects the data itself, the purchases of the segment are
+ * inserted one by one and the rejected ones are logged and dropped, so they can't block the log forever.
+ * The name of the segment is the batch key of its insert (and with the position of the purchase, of the
+ * one-by-one inserts), so a segment tried again after some of its shards committed, or replayed after a
+ * crash between the commit and its deletion, doesn't insert the purchases of those shards twice.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "purchase.write-behind.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class PurchaseLogFlusher {
+
+    private final PurchaseLog purchaseLog;
+    private final PurchaseRepository purchaseRepository;
+
+    @Scheduled(fixedDelayString = "${purchase.write-behind.flush-interval:200}")
+    public synchronized void flush() throws IOException {
+        for (Path segment : purchaseLog.roll()) {
+            List<Purchase> purchases = new ArrayList<>();
+            PurchaseLog.read(segment, purchases::add);
+            try {
+                purchaseRepository.storePurchases(purchases, segment.getFileName().toString());
+            } catch (DataIntegrityViolationException e) {
+                storeOneByOne(segment, purchases);
+            } catch (DataAccessException e) {
+                log.warn("Purchase log {} not flushed, will retry: {}", segment.getFileName(), e.getMessage());
+                return; //the later segments too, to keep the insert order
+            }
+            Files.delete(segment);
+        }
+    }
+
+    /**
+     * Last flush of what was appended before the shutdown; later appends wait in the log for the next start.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Skips the purchases of the shards that committed the batch insert of the segment before another shard
+     * rejected it.
+     */
+    private void storeOneByOne(Path segment, List<Purchase> purchases) {
+        Predicate<Purchase> alreadyStored = purchaseRepository.batchStored(segment.getFileName().toString());
+        for (int i = 0; i < purchases.size(); i++) {
+            Purchase purchase = purchases.get(i);
+            if (alreadyStored.test(purchase)) {
+                continue;
+            }
+            try {
+                purchaseRepository.storePurchases(List.of(purchase), segment.getFileName() + "#" + i);
+            } catch (DataIntegrityViolationException e) {
+                log.error("Purchase of {} for {} from {} rejected by the database, dropped: {}",
+                        purchase.getProduct(), purchase.getPrice(), segment.getFileName(), e.getMessage());
+            }
+        }
+    }
+}
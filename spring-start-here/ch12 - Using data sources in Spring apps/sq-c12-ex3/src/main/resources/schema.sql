@@ -2,4 +2,8 @@ CREATE TABLE IF NOT EXISTS purchase (
     id INT AUTO_INCREMENT PRIMARY KEY,
     product varchar(50) NOT NULL,
     price double NOT NULL
-);
\ No newline at end of file
+);
+CREATE TABLE IF NOT EXISTS purchase_batch (
+    batch_key varchar(64) PRIMARY KEY,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,131 @@
+package com.ro.repositories;
+
+import com.ro.model.Purchase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("shards") //3 embedded H2 databases
+class PurchaseRepositoryShardingTest {
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private PurchaseShards purchaseShards;
+
+    @BeforeEach
+    public void emptyShards() {
+        for (PurchaseShards.Shard shard : purchaseShards.all()) {
+            shard.jdbc().update("DELETE FROM purchase");
+            shard.jdbc().update("DELETE FROM purchase_batch");
+        }
+    }
+
+    @Test
+    @DisplayName("Test the purchases are spread over the shards by product and all found again")
+    public void storeAndFindAcrossShards() {
+        //given
+        List<Purchase> purchases = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            purchases.add(purchase("product-" + i % 30, "1.50"));
+        }
+
+        //when
+        purchaseRepository.storePurchases(purchases.subList(0, 299));
+        purchaseRepository.storePurchase(purchases.get(299));
+
+        //then
+        assertEquals(3, purchaseShards.all().size());
+        int stored = 0;
+        for (PurchaseShards.Shard shard : purchaseShards.all()) {
+            List<String> products = shard.jdbc().queryForList("SELECT DISTINCT product FROM purchase", String.class);
+            assertTrue(!products.isEmpty(), "shard " + shard.index() + " is empty");
+            products.forEach(product -> assertEquals(shard, purchaseShards.shardFor(product)));
+            stored += shard.jdbc().queryForObject("SELECT COUNT(*) FROM purchase", Integer.class);
+        }
+        assertEquals(300, stored);
+        assertEquals(300, purchaseRepository.findAllPurchases().size());
+        List<Purchase> exported = new ArrayList<>();
+        purchaseRepository.forEachPurchase(exported::add);
+        assertEquals(300, exported.size());
+    }
+
+    @Test
+    @DisplayName("Test the purchases of different shards get different ids")
+    public void idsUniqueAcrossShards() {
+        //given purchases in all the shards, whose tables number their rows independently
+        List<Purchase> purchases = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            purchases.add(purchase("product-" + i, "1.50"));
+        }
+
+        //when
+        purchaseRepository.storePurchases(purchases);
+
+        //then
+        Set<Long> ids = new HashSet<>();
+        purchaseRepository.findAllPurchases().forEach(purchase -> ids.add(purchase.getId()));
+        assertEquals(30, ids.size());
+        List<Purchase> exported = new ArrayList<>();
+        purchaseRepository.forEachPurchase(exported::add);
+        assertEquals(ids, new HashSet<>(exported.stream().map(Purchase::getId).toList()));
+    }
+
+    @Test
+    @DisplayName("Test a batch retried with the same key after a shard failed stores only the missing shards")
+    public void retryAfterPartialFailure() {
+        //given a batch over two shards whose second shard fails
+        Purchase first = purchase("product-0", "1.50");
+        Purchase second = purchaseInAnotherShard(first);
+        PurchaseShards.Shard failing = purchaseShards.shardFor(second.getProduct());
+        failing.jdbc().execute("ALTER TABLE purchase RENAME TO purchase_moved");
+        try {
+            assertThrows(RuntimeException.class,
+                    () -> purchaseRepository.storePurchases(List.of(first, second), "batch-1"));
+        } finally {
+            failing.jdbc().execute("ALTER TABLE purchase_moved RENAME TO purchase");
+        }
+
+        //when the batch is retried, twice
+        purchaseRepository.storePurchases(List.of(first, second), "batch-1");
+        purchaseRepository.storePurchases(List.of(first, second), "batch-1");
+
+        //then each purchase is stored once
+        assertEquals(List.of("product-0", second.getProduct()),
+                purchaseRepository.findAllPurchases().stream().map(Purchase::getProduct).sorted().toList());
+    }
+
+    /**
+     * A purchase of a product in another shard than the one of the given purchase.
+     */
+    private Purchase purchaseInAnotherShard(Purchase other) {
+        for (int i = 1; ; i++) {
+            Purchase purchase = purchase("product-" + i, "2.50");
+            if (!purchaseShards.shardFor(purchase.getProduct()).equals(purchaseShards.shardFor(other.getProduct()))) {
+                return purchase;
+            }
+        }
+    }
+
+    private static Purchase purchase(String product, String price) {
+        Purchase purchase = new Purchase();
+        purchase.setProduct(product);
+        purchase.setPrice(new BigDecimal(price));
+        return purchase;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ro.writebehind;
+
+import com.ro.model.Purchase;
+import com.ro.repositories.PurchaseRepository;
+import com.ro.repositories.PurchaseShards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("shards") //3 embedded H2 databases
+class PurchaseLogFlusherTest {
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private PurchaseShards purchaseShards;
+
+    @TempDir
+    private Path directory;
+
+    @BeforeEach
+    public void emptyShards() {
+        for (PurchaseShards.Shard shard : purchaseShards.all()) {
+            shard.jdbc().update("DELETE FROM purchase");
+            shard.jdbc().update("DELETE FROM purchase_batch");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a segment rejected by a shard after another one committed stores every purchase once")
+    public void rejectedAfterAnotherShardCommitted() throws Exception {
+        //given a segment whose second shard rejects a product longer than the column
+        Purchase first = purchase("product-0");
+        PurchaseShards.Shard otherShard = purchaseShards.all().stream()
+                .filter(shard -> shard != purchaseShards.shardFor(first.getProduct()))
+                .findFirst().orElseThrow();
+        Purchase second = purchase(productIn(otherShard, "product-"));
+        Purchase tooLong = purchase(productIn(otherShard, "x".repeat(60)));
+        PurchaseLog purchaseLog = new PurchaseLog(directory);
+        purchaseLog.append(first);
+        purchaseLog.append(second);
+        purchaseLog.append(tooLong);
+
+        //when
+        new PurchaseLogFlusher(purchaseLog, purchaseRepository).flush();
+        purchaseLog.close();
+
+        //then
+        assertEquals(List.of(first.getProduct(), second.getProduct()),
+                purchaseRepository.findAllPurchases().stream().map(Purchase::getProduct).sorted().toList());
+        try (var segments = Files.list(directory)) {
+            assertTrue(segments.noneMatch(segment -> segment.getFileName().toString().endsWith(".wal")));
+        }
+    }
+
+    private String productIn(PurchaseShards.Shard shard, String prefix) {
+        for (int i = 1; ; i++) {
+            if (purchaseShards.shardFor(prefix + i) == shard) {
+                return prefix + i;
+            }
+        }
+    }
+
+    private static Purchase purchase(String product) {
+        Purchase purchase = new Purchase();
+        purchase.setProduct(product);
+        purchase.setPrice(new BigDecimal("1.50"));
+        return purchase;
+    }
+}
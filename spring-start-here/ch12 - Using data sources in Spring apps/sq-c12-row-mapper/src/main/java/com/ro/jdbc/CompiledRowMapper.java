@@ -0,0 +1,264 @@
+package com.ro.jdbc;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.beans.BeanUtils;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Row mapping for any public class with a public no-argument constructor and public setters, e.g.
+ * jdbc.query(sql, CompiledRowMapper.of(Account.class).rowMapper()).
+ * <p>
+ * The first of() call for a class generates the bytecode of a reader doing what a hand-written mapper does
+ * (new Account(), setId(rs.getLong(...)), setName(rs.getString(...))...), with plain calls the JIT can inline
+ * and no reflection per row like BeanPropertyRowMapper. The reader is cached per class and can be shared.
+ * <p>
+ * The columns are matched with the properties by name (ignoring case and underscores, like
+ * BeanPropertyRowMapper) once per query, by the RowMapper of rowMapper(): it binds them at its first row and
+ * then gets the values by column index, while a hand-written mapper calling getString("name") makes the
+ * driver look up the column for every value. So take a new rowMapper() for every query; it's a small object.
+ * Columns without a property are ignored and properties without a column keep their default value, like the
+ * primitive properties (and char) of a SQL NULL.
+ * <p>
+ * The reader is a hidden class defined next to this one, so the mapped class must be visible from the class
+ * loader of this jar, as it is when both are on the classpath of the app.
+ */
+public final class CompiledRowMapper<T> {
+
+    private static final Map<Class<?>, CompiledRowMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    /**
+     * ResultSet getters by property type; char is read by getCharacter() and the other types with
+     * getObject(index, type).
+     */
+    private static final Map<Class<?>, String> GETTERS = Map.of(
+            int.class, "getInt",
+            long.class, "getLong",
+            double.class, "getDouble",
+            float.class, "getFloat",
+            short.class, "getShort",
+            byte.class, "getByte",
+            boolean.class, "getBoolean",
+            String.class, "getString",
+            BigDecimal.class, "getBigDecimal");
+
+    /**
+     * Called with the ResultSet positioned on a row and the column index of every property (0: no column).
+     * The generated code throws the SQLExceptions of the ResultSet as they are.
+     */
+    private final BiFunction<ResultSet, int[], T> reader;
+    private final Map<String, Integer> propertyPositions;
+
+    private CompiledRowMapper(BiFunction<ResultSet, int[], T> reader, Map<String, Integer> propertyPositions) {
+        this.reader = reader;
+        this.propertyPositions = propertyPositions;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> CompiledRowMapper<T> of(Class<T> type) {
+        return (CompiledRowMapper<T>) MAPPERS.computeIfAbsent(type, CompiledRowMapper::compile);
+    }
+
+    /**
+     * A RowMapper for one query, to be used by one thread.
+     */
+    public RowMapper<T> rowMapper() {
+        return new RowMapper<>() {
+            private ResultSet boundResultSet;
+            private int[] columnIndexes;
+
+            @Override
+            public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                if (rs != boundResultSet) {
+                    columnIndexes = bind(rs);
+                    boundResultSet = rs;
+                }
+                return reader.apply(rs, columnIndexes);
+            }
+        };
+    }
+
+    private int[] bind(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int[] columnIndexes = new int[propertyPositions.size()];
+        for (int index = 1; index <= metaData.getColumnCount(); index++) {
+            Integer position = propertyPositions.get(normalize(JdbcUtils.lookupColumnName(metaData, index)));
+            if (position != null && columnIndexes[position] == 0) {
+                columnIndexes[position] = index;
+            }
+        }
+        return columnIndexes;
+    }
+
+    /**
+     * Called by the generated readers for the char properties: the first character of the column, null for
+     * NULL or an empty string.
+     */
+    static Character getCharacter(ResultSet rs, int index) throws SQLException {
+        String value = rs.getString(index);
+        return value == null || value.isEmpty() ? null : value.charAt(0);
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompiledRowMapper<T> compile(Class<T> type) {
+        List<Method> setters = new ArrayList<>();
+        Map<String, Integer> propertyPositions = new HashMap<>();
+        for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(type)) {
+            Method setter = descriptor.getWriteMethod();
+            if (setter != null && Modifier.isPublic(setter.getDeclaringClass().getModifiers())) {
+                propertyPositions.put(normalize(descriptor.getName()), setters.size());
+                setters.add(setter);
+            }
+        }
+
+        try {
+            //a hidden class in this package, so it needs nothing more than public access to the mapped class
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(generateReader(type, setters), true);
+            BiFunction<ResultSet, int[], T> reader = (BiFunction<ResultSet, int[], T>)
+                    lookup.lookupClass().getConstructor().newInstance();
+            return new CompiledRowMapper<>(reader, propertyPositions);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            throw new IllegalArgumentException("Can't generate a row mapper for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * The bytecode of a BiFunction whose apply(rs, columnIndexes) is, for Account:
+     * <pre>
+     * Account row = new Account();
+     * int index = columnIndexes[0];
+     * if (index != 0) {
+     *     long id = rs.getLong(index);
+     *     if (!rs.wasNull()) row.setId(id);
+     * }
+     * index = columnIndexes[1];
+     * if (index != 0) row.setName(rs.getString(index));
+     * ...
+     * return row;
+     * </pre>
+     */
+    private static byte[] generateReader(Class<?> type, List<Method> setters) {
+        String typeName = Type.getInternalName(type);
+        String resultSet = Type.getInternalName(ResultSet.class);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                Type.getInternalName(CompiledRowMapper.class) + "$Reader", null,
+                "java/lang/Object", new String[]{Type.getInternalName(BiFunction.class)});
+
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        //locals: 0 this, 1 rs, 2 columnIndexes, 3 row, 4 index
+        MethodVisitor apply = writer.visitMethod(Opcodes.ACC_PUBLIC, "apply",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        apply.visitCode();
+        apply.visitVarInsn(Opcodes.ALOAD, 1);
+        apply.visitTypeInsn(Opcodes.CHECKCAST, resultSet);
+        apply.visitVarInsn(Opcodes.ASTORE, 1);
+        apply.visitVarInsn(Opcodes.ALOAD, 2);
+        apply.visitTypeInsn(Opcodes.CHECKCAST, "[I");
+        apply.visitVarInsn(Opcodes.ASTORE, 2);
+        apply.visitTypeInsn(Opcodes.NEW, typeName);
+        apply.visitInsn(Opcodes.DUP);
+        apply.visitMethodInsn(Opcodes.INVOKESPECIAL, typeName, "<init>", "()V", false);
+        apply.visitVarInsn(Opcodes.ASTORE, 3);
+
+        for (int position = 0; position < setters.size(); position++) {
+            Method setter = setters.get(position);
+            Class<?> propertyType = setter.getParameterTypes()[0];
+            Label next = new Label();
+            Label set = new Label();
+
+            apply.visitVarInsn(Opcodes.ALOAD, 2);
+            apply.visitLdcInsn(position);
+            apply.visitInsn(Opcodes.IALOAD);
+            apply.visitVarInsn(Opcodes.ISTORE, 4);
+            apply.visitVarInsn(Opcodes.ILOAD, 4);
+            apply.visitJumpInsn(Opcodes.IFEQ, next);
+
+            //stack: row, value
+            apply.visitVarInsn(Opcodes.ALOAD, 3);
+            apply.visitVarInsn(Opcodes.ALOAD, 1);
+            apply.visitVarInsn(Opcodes.ILOAD, 4);
+            String getter = GETTERS.get(propertyType);
+            if (getter != null) {
+                apply.visitMethodInsn(Opcodes.INVOKEINTERFACE, resultSet, getter,
+                        Type.getMethodDescriptor(Type.getType(propertyType), Type.INT_TYPE), true);
+                if (propertyType.isPrimitive()) {
+                    //a NULL read as 0 or false: keep the default value instead
+                    apply.visitVarInsn(Opcodes.ALOAD, 1);
+                    apply.visitMethodInsn(Opcodes.INVOKEINTERFACE, resultSet, "wasNull", "()Z", true);
+                    apply.visitJumpInsn(Opcodes.IFEQ, set);
+                    apply.visitInsn(propertyType == long.class || propertyType == double.class ? Opcodes.POP2 : Opcodes.POP);
+                    apply.visitInsn(Opcodes.POP);
+                    apply.visitJumpInsn(Opcodes.GOTO, next);
+                }
+            } else if (propertyType == char.class) {
+                apply.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(CompiledRowMapper.class),
+                        "getCharacter", "(L" + resultSet + ";I)Ljava/lang/Character;", false);
+                apply.visitInsn(Opcodes.DUP);
+                apply.visitJumpInsn(Opcodes.IFNONNULL, set);
+                apply.visitInsn(Opcodes.POP);
+                apply.visitInsn(Opcodes.POP);
+                apply.visitJumpInsn(Opcodes.GOTO, next);
+            } else {
+                apply.visitLdcInsn(Type.getType(propertyType));
+                apply.visitMethodInsn(Opcodes.INVOKEINTERFACE, resultSet, "getObject",
+                        "(ILjava/lang/Class;)Ljava/lang/Object;", true);
+                apply.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(propertyType));
+            }
+            apply.visitLabel(set);
+            if (propertyType == char.class) {
+                apply.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Character", "charValue", "()C", false);
+            }
+            apply.visitMethodInsn(Opcodes.INVOKEVIRTUAL, typeName, setter.getName(),
+                    Type.getMethodDescriptor(setter), false);
+            Class<?> returnType = setter.getReturnType();
+            if (returnType == long.class || returnType == double.class) {
+                apply.visitInsn(Opcodes.POP2);
+            } else if (returnType != void.class) {
+                apply.visitInsn(Opcodes.POP); //fluent setter
+            }
+            apply.visitLabel(next);
+        }
+
+        apply.visitVarInsn(Opcodes.ALOAD, 3);
+        apply.visitInsn(Opcodes.ARETURN);
+        apply.visitMaxs(0, 0);
+        apply.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
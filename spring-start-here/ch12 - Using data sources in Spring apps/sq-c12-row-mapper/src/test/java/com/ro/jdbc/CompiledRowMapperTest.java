@@ -0,0 +1,237 @@
+package com.ro.jdbc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompiledRowMapperTest {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void createTable() {
+        jdbc = new JdbcTemplate(new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbc.execute("""
+                CREATE TABLE sample_row (
+                  id BIGINT, count INT, ratio DOUBLE, active BOOLEAN, grade CHAR(1),
+                  boxed_count INT, full_name VARCHAR(50), amount DECIMAL(10, 2), extra VARCHAR(10))""");
+        jdbc.update("INSERT INTO sample_row VALUES (1, 5, 0.5, TRUE, 'A', 6, 'Jane Down', 10.25, 'x')");
+        jdbc.update("INSERT INTO sample_row VALUES (2, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+    }
+
+    @Test
+    @DisplayName("Test the columns are read into the properties of their type")
+    public void readsEveryType() {
+        Row row = jdbc.queryForObject("SELECT * FROM sample_row WHERE id = 1", CompiledRowMapper.of(Row.class).rowMapper());
+
+        assertEquals(1L, row.getId());
+        assertEquals(5, row.getCount());
+        assertEquals(0.5, row.getRatio());
+        assertEquals(true, row.isActive());
+        assertEquals('A', row.getGrade());
+        assertEquals(6, row.getBoxedCount());
+        assertEquals("Jane Down", row.getFullName());
+        assertEquals(new BigDecimal("10.25"), row.getAmount());
+    }
+
+    @Test
+    @DisplayName("Test a SQL NULL keeps the default value of a primitive or char property and sets the others to null")
+    public void nullColumns() {
+        Row row = jdbc.queryForObject("SELECT * FROM sample_row WHERE id = 2", CompiledRowMapper.of(Row.class).rowMapper());
+
+        assertEquals(-1, row.getCount());
+        assertEquals(-1.0, row.getRatio());
+        assertEquals(true, row.isActive());
+        assertEquals('?', row.getGrade());
+        assertNull(row.getBoxedCount());
+        assertNull(row.getFullName());
+        assertNull(row.getAmount());
+    }
+
+    @Test
+    @DisplayName("Test fluent setters (returning the object or a long) are called")
+    public void fluentSetters() {
+        FluentRow row = jdbc.queryForObject("SELECT id, full_name FROM sample_row WHERE id = 1",
+                CompiledRowMapper.of(FluentRow.class).rowMapper());
+
+        assertEquals(1L, row.getId());
+        assertEquals("Jane Down", row.getFullName());
+    }
+
+    @Test
+    @DisplayName("Test columns without a property are ignored and properties without a column keep their default")
+    public void unmatchedColumns() {
+        Row row = jdbc.queryForObject("SELECT id, extra, 42 AS no_property FROM sample_row WHERE id = 1",
+                CompiledRowMapper.of(Row.class).rowMapper());
+
+        assertEquals(1L, row.getId());
+        assertEquals(-1, row.getCount());
+        assertNull(row.getFullName());
+    }
+
+    @Test
+    @DisplayName("Test the columns are bound once per query")
+    public void bindsOncePerQuery() throws Exception {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("ID");
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.getLong(1)).thenReturn(7L);
+
+        RowMapper<Row> rowMapper = CompiledRowMapper.of(Row.class).rowMapper();
+        for (int rowNum = 0; rowNum < 3; rowNum++) {
+            assertEquals(7L, rowMapper.mapRow(resultSet, rowNum).getId());
+        }
+        verify(resultSet, times(1)).getMetaData();
+    }
+
+    @Test
+    @DisplayName("Test concurrent queries with different column orders each read their own columns")
+    public void concurrentQueries() throws Exception {
+        CompiledRowMapper<Row> mapper = CompiledRowMapper.of(Row.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> queries = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                String sql = thread % 2 == 0
+                        ? "SELECT id, count, full_name FROM sample_row WHERE id = 1"
+                        : "SELECT full_name, count, id FROM sample_row WHERE id = 1";
+                queries.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        Row row = jdbc.queryForObject(sql, mapper.rowMapper());
+                        assertEquals(1L, row.getId());
+                        assertEquals(5, row.getCount());
+                        assertEquals("Jane Down", row.getFullName());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> query : queries) {
+                query.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class Row {
+        private long id;
+        private int count = -1;
+        private double ratio = -1;
+        private boolean active = true;
+        private char grade = '?';
+        private Integer boxedCount;
+        private String fullName;
+        private BigDecimal amount;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public char getGrade() {
+            return grade;
+        }
+
+        public void setGrade(char grade) {
+            this.grade = grade;
+        }
+
+        public Integer getBoxedCount() {
+            return boxedCount;
+        }
+
+        public void setBoxedCount(Integer boxedCount) {
+            this.boxedCount = boxedCount;
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public void setFullName(String fullName) {
+            this.fullName = fullName;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+    }
+
+    public static class FluentRow {
+        private long id;
+        private String fullName;
+
+        public long getId() {
+            return id;
+        }
+
+        public long setId(long id) {
+            long previous = this.id;
+            this.id = id;
+            return previous;
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public FluentRow setFullName(String fullName) {
+            this.fullName = fullName;
+            return this;
+        }
+    }
+}
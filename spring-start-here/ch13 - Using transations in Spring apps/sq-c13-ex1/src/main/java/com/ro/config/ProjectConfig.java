@@ -0,0 +1,9 @@
+package com.ro.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling //used by the ledger to take periodic snapshots
+public class ProjectConfig {
+}
@@ -2,25 +2,38 @@ package com.ro.controllers;
 
 import com.ro.dto.TransferRequest;
 import com.ro.model.Account;
+import com.ro.services.TransferQueue;
 import com.ro.services.TransferService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequiredArgsConstructor
 public class AccountController {
     private final TransferService transferService;
+    private final TransferQueue transferQueue;
+
+    @Value("${transfer.async.enabled:false}")
+    private boolean asyncTransfers;
+
     @PostMapping("/transfer")
-    public void transferMoney(@RequestBody TransferRequest request) {
+    public CompletableFuture<Void> transferMoney(@RequestBody TransferRequest request) {
+        if (asyncTransfers) {
+            //the response is sent when the writer thread has committed the group containing this transfer
+            return transferQueue.submit(request);
+        }
         transferService.transferMoney(
                 request.getSenderAccountId(),
                 request.getReceiverAccountId(),
                 request.getAmount());
+        return CompletableFuture.completedFuture(null);
     }
     @GetMapping("/accounts")
     public List<Account> getAllAccounts() {
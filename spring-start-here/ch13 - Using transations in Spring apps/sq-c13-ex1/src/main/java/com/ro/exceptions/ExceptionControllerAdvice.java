@@ -0,0 +1,29 @@
+package com.ro.exceptions;
+
+import com.ro.exceptions.model.ErrorDetails;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ExceptionControllerAdvice {
+
+    @ExceptionHandler(TransferQueueFullException.class)
+    public ResponseEntity<ErrorDetails> exceptionTransferQueueFullHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("Too many pending transfers, try again later");
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(TransferQueueStoppedException.class)
+    public ResponseEntity<ErrorDetails> exceptionTransferQueueStoppedHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The service is shutting down, try again later");
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(errorDetails);
+    }
+}
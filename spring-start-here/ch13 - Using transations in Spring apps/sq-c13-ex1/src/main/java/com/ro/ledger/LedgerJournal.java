@@ -0,0 +1,176 @@
+package com.ro.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only file of ledger changes. Every record has the same size:
+ * type (1 byte), first account id, second account id and amount in minor units (8 bytes each).
+ * <p>
+ * The journal is split into segments (journal-N.log). A snapshot-N.bin file holds the balances
+ * from before segment N was started, so recovery loads the newest snapshot and replays the
+ * segments from N on.
+ * <p>
+ * Appends don't take a lock: each one claims the position of its record with an atomic add and writes it
+ * there with a positional write, in parallel with the others. An append returns once every record before
+ * its own is written too (and, with fsync, forced to disk), so the records acknowledged to callers always
+ * form a prefix of the file. With fsync, one force covers every record written so far, so concurrent
+ * appends share it (group commit).
+ */
+public class LedgerJournal implements Closeable {
+
+    public static final byte TRANSFER = 1; //first id = sender, second id = receiver
+    public static final byte SET = 2; //first id = account, second id unused
+
+    static final int RECORD_SIZE = 1 + 8 + 8 + 8;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final AtomicLong next = new AtomicLong(); //position of the next record
+    private final AtomicLong written = new AtomicLong(); //the records before this position are all written
+    private final AtomicLong forced = new AtomicLong(); //the records before this position are all on disk
+    private final AtomicBoolean forcing = new AtomicBoolean();
+    private volatile FileChannel channel;
+    private volatile long segment;
+    private volatile IOException failure;
+
+    public LedgerJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Once an append failed, the journal has a hole that recovery stops at, so every later append fails too
+     * (the changes after it could not be recovered).
+     */
+    public void append(byte type, long firstId, long secondId, long amount) {
+        checkFailure();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(type).putLong(firstId).putLong(secondId).putLong(amount).flip();
+
+        long position = next.getAndAdd(RECORD_SIZE);
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        }
+
+        //publish in position order: wait for the appends that claimed the earlier positions
+        while (!written.compareAndSet(position, position + RECORD_SIZE)) {
+            checkFailure();
+            Thread.onSpinWait();
+        }
+        if (fsync) {
+            awaitForced(position + RECORD_SIZE);
+        }
+    }
+
+    /**
+     * The first waiting append forces what is written so far; the others wait for a force that covers them.
+     */
+    private void awaitForced(long end) {
+        while (forced.get() < end) {
+            checkFailure();
+            if (forcing.compareAndSet(false, true)) {
+                try {
+                    long target = written.get();
+                    if (forced.get() < end) {
+                        channel.force(false);
+                        forced.accumulateAndGet(target, Math::max);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    throw new UncheckedIOException(e);
+                } finally {
+                    forcing.set(false);
+                }
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+    }
+
+    private void checkFailure() {
+        IOException e = failure;
+        if (e != null) {
+            throw new UncheckedIOException("The ledger journal failed", e);
+        }
+    }
+
+    /**
+     * Closes the current segment and continues writing in journal-{segment}.log. The caller makes sure no
+     * append is running (LedgerAccountRepository holds every stripe lock).
+     */
+    public synchronized void roll(long segment) throws IOException {
+        close();
+        FileChannel file = FileChannel.open(segmentFile(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long size = file.size();
+        next.set(size);
+        written.set(size);
+        forced.set(size);
+        this.channel = file;
+        this.segment = segment;
+    }
+
+    public long segment() {
+        return segment;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public static Path segmentFile(Path directory, long segment) {
+        return directory.resolve("journal-" + segment + ".log");
+    }
+
+    /**
+     * Feeds every complete record of the segment to the handler. A partially written record at the end
+     * of the file (the process died while appending it) is ignored, since it was never acknowledged.
+     * So is everything from a zeroed record on: the process died before writing it, and no record after
+     * it was acknowledged.
+     */
+    public static void replay(Path file, RecordHandler handler) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            while (in.read(records) > 0) {
+                records.flip();
+                while (records.remaining() >= RECORD_SIZE) {
+                    byte type = records.get();
+                    if (type == 0) {
+                        return;
+                    }
+                    handler.handle(type, records.getLong(), records.getLong(), records.getLong());
+                }
+                records.compact();
+            }
+        }
+    }
+
+    public static boolean exists(Path directory, long segment) {
+        return Files.exists(segmentFile(directory, segment));
+    }
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(byte type, long firstId, long secondId, long amount);
+    }
+}
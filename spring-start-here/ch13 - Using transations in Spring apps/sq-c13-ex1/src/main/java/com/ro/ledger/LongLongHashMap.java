@@ -0,0 +1,119 @@
+package com.ro.ledger;
+
+/**
+ * Open addressing (linear probing) map from long keys to long values. Keys and values live in two
+ * primitive arrays, so a lookup doesn't box the id or the balance. Entries are never removed.
+ * Not thread safe: the ledger guards every instance with a lock.
+ */
+public class LongLongHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    public boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    /**
+     * @return the value of the key, or defaultValue if the map doesn't contain it
+     */
+    public long get(long key, long defaultValue) {
+        int index = indexOf(key);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    public void put(long key, long value) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                resize();
+                index = indexOf(key);
+            }
+            used[index] = true;
+            keys[index] = key;
+            size++;
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Adds delta to the value of a key that is already in the map.
+     *
+     * @return false if the map doesn't contain the key
+     */
+    public boolean add(long key, long delta) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            return false;
+        }
+        values[index] += delta;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(LongLongConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the key, or the free slot where it would be inserted
+     */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = indexOf(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; //spreads sequential ids over the table
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+}
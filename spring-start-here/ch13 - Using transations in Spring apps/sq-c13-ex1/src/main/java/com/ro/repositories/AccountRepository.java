@@ -1,32 +1,24 @@
 package com.ro.repositories;
 
 import com.ro.model.Account;
-import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.util.List;
 
-@Repository
-@RequiredArgsConstructor
-public class AccountRepository {
+/**
+ * Where the account balances live. JdbcAccountRepository keeps them in the account table,
+ * LedgerAccountRepository keeps them in memory (accounts.storage=ledger).
+ */
+public interface AccountRepository {
 
-    private final JdbcTemplate jdbc;
+    Account findAccountById(long id);
 
-    public Account findAccountById(long id) {
-        String sql = "SELECT * FROM account WHERE id = ?";
-        return jdbc.queryForObject(sql, new AccountRowMapper(), id);
-    }
+    void changeAmount(long id, BigDecimal amount);
 
-    public void changeAmount(long id, BigDecimal amount) {
-        String sql = "update account set amount = ? where id = ?";
-        jdbc.update(sql, amount, id);
-    }
+    /**
+     * Moves the amount from the sender to the receiver as one unit of work.
+     */
+    void transferAmount(long idSender, long idReceiver, BigDecimal amount);
 
-    public List<Account> findAllAccounts() {
-        String sql = "select * from account";
-        return jdbc.query(sql, new AccountRowMapper());
-    }
+    List<Account> findAllAccounts();
 }
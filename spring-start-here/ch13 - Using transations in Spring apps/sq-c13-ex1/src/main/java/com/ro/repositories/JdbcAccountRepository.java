@@ -0,0 +1,52 @@
+package com.ro.repositories;
+
+import com.ro.jdbc.CompiledRowMapper;
+import com.ro.model.Account;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "accounts.storage", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcAccountRepository implements AccountRepository {
+
+    private final JdbcTemplate jdbc;
+
+    @Override
+    public Account findAccountById(long id) {
+        String sql = "SELECT * FROM account WHERE id = ?";
+        return jdbc.queryForObject(sql, CompiledRowMapper.of(Account.class).rowMapper(), id);
+    }
+
+    @Override
+    public void changeAmount(long id, BigDecimal amount) {
+        String sql = "update account set amount = ? where id = ?";
+        jdbc.update(sql, amount, id);
+    }
+
+    /**
+     * Relies on the caller's transaction to apply both updates or none.
+     */
+    @Override
+    public void transferAmount(long idSender, long idReceiver, BigDecimal amount) {
+        Account sender = findAccountById(idSender);
+        Account receiver = findAccountById(idReceiver);
+
+        BigDecimal senderNewAmount = sender.getAmount().subtract(amount);
+        BigDecimal receiverNewAmount = receiver.getAmount().add(amount);
+
+        changeAmount(idSender, senderNewAmount);
+        changeAmount(idReceiver, receiverNewAmount);
+    }
+
+    @Override
+    public List<Account> findAllAccounts() {
+        String sql = "select * from account";
+        return jdbc.query(sql, CompiledRowMapper.of(Account.class).rowMapper());
+    }
+}
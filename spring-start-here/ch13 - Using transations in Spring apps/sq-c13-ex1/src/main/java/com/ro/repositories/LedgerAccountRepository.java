@@ -0,0 +1,324 @@
+package com.ro.repositories;
+
+import com.ro.jdbc.CompiledRowMapper;
+import com.ro.ledger.LedgerJournal;
+import com.ro.ledger.LongLongHashMap;
+import com.ro.model.Account;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the balances in memory, as minor units (cents) in primitive long maps split into lock stripes.
+ * A transfer locks only the stripes of its two accounts, always the lower stripe first, so transfers
+ * between different accounts run in parallel and two opposite transfers can't deadlock.
+ * Reads don't touch the database.
+ * <p>
+ * Every change is appended to a LedgerJournal, while the stripe locks are held, before it is applied in
+ * memory: if the append fails, the balances are left as they were. A snapshot of all
+ * balances is written periodically; it starts a new journal segment and deletes the older files.
+ * On startup the ledger loads the newest snapshot (or, the first time, the account table) and replays
+ * the journal segments written after it.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.storage", havingValue = "ledger")
+public class LedgerAccountRepository implements AccountRepository {
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern JOURNAL_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbc;
+    private final Path directory;
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final Map<Long, String> names = new ConcurrentHashMap<>();
+    private final LedgerJournal journal;
+
+    public LedgerAccountRepository(JdbcTemplate jdbc,
+                                   @Value("${accounts.ledger.directory:ledger-data}") Path directory,
+                                   @Value("${accounts.ledger.stripes:64}") int stripes,
+                                   @Value("${accounts.ledger.fsync:false}") boolean fsync) {
+        this.jdbc = jdbc;
+        this.directory = directory;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1]; //power of two
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(this.stripes.length);
+        this.journal = new LedgerJournal(directory, fsync);
+    }
+
+    @Override
+    public Account findAccountById(long id) {
+        Stripe stripe = stripeFor(id);
+        long balance;
+        stripe.lock.lock();
+        try {
+            balance = stripe.balances.get(id, MISSING);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (balance == MISSING) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        return account(id, balance);
+    }
+
+    @Override
+    public void changeAmount(long id, BigDecimal amount) {
+        long balance = toMinorUnits(amount);
+        Stripe stripe = stripeFor(id);
+        stripe.lock.lock();
+        try {
+            if (!stripe.balances.containsKey(id)) {
+                throw new EmptyResultDataAccessException(1);
+            }
+            journal.append(LedgerJournal.SET, id, 0, balance);
+            stripe.balances.put(id, balance);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void transferAmount(long idSender, long idReceiver, BigDecimal amount) {
+        long minorUnits = toMinorUnits(amount);
+        int senderStripe = stripeIndex(idSender);
+        int receiverStripe = stripeIndex(idReceiver);
+        Stripe first = stripes[Math.min(senderStripe, receiverStripe)];
+        Stripe second = stripes[Math.max(senderStripe, receiverStripe)];
+
+        first.lock.lock();
+        second.lock.lock(); //reentrant, so it's fine if both accounts are in the same stripe
+        try {
+            Stripe sender = stripes[senderStripe];
+            Stripe receiver = stripes[receiverStripe];
+            if (!sender.balances.containsKey(idSender) || !receiver.balances.containsKey(idReceiver)) {
+                throw new EmptyResultDataAccessException(1);
+            }
+            journal.append(LedgerJournal.TRANSFER, idSender, idReceiver, minorUnits);
+            sender.balances.add(idSender, -minorUnits);
+            receiver.balances.add(idReceiver, minorUnits);
+        } finally {
+            second.lock.unlock();
+            first.lock.unlock();
+        }
+    }
+
+    /**
+     * Each stripe is read under its own lock, so the list is not a point-in-time view of all accounts
+     * while transfers are running, but every balance in it is one that was committed.
+     */
+    @Override
+    public List<Account> findAllAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.balances.forEach((id, balance) -> accounts.add(account(id, balance)));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        accounts.sort(Comparator.comparingLong(Account::getId));
+        return accounts;
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        long snapshotSegment = latest(SNAPSHOT_FILE);
+        if (snapshotSegment >= 0) {
+            loadSnapshot(directory.resolve("snapshot-" + snapshotSegment + ".bin"));
+        } else {
+            //first start: the account table is the initial state
+            for (Account account : jdbc.query("select * from account", CompiledRowMapper.of(Account.class).rowMapper())) {
+                put(account.getId(), account.getName(), toMinorUnits(account.getAmount()));
+            }
+            snapshotSegment = 0;
+        }
+
+        long lastSegment = Math.max(snapshotSegment, latest(JOURNAL_FILE));
+        for (long segment = snapshotSegment; segment <= lastSegment; segment++) {
+            if (LedgerJournal.exists(directory, segment)) {
+                LedgerJournal.replay(LedgerJournal.segmentFile(directory, segment), this::apply);
+            }
+        }
+
+        //compact what was replayed and open a new segment for the next changes
+        writeSnapshot(lastSegment + 1);
+        log.info("Ledger recovered {} accounts from {}", names.size(), directory.toAbsolutePath());
+    }
+
+    @Scheduled(fixedDelayString = "${accounts.ledger.snapshot-interval:60000}",
+            initialDelayString = "${accounts.ledger.snapshot-interval:60000}")
+    public void snapshot() throws IOException {
+        writeSnapshot(journal.segment() + 1);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Copies all balances while holding every stripe lock (taken in stripe order, like the transfers do)
+     * and starts the given journal segment at the same moment, so the snapshot and the segments after it
+     * never overlap. The file itself is written after the locks are released.
+     */
+    private void writeSnapshot(long segment) throws IOException {
+        LongLongHashMap copy = new LongLongHashMap(names.size());
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.balances.forEach(copy::put);
+            }
+            journal.roll(segment);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+
+        Path tmp = directory.resolve("snapshot-" + segment + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(copy.size());
+            IOException[] failure = new IOException[1];
+            copy.forEach((id, balance) -> {
+                try {
+                    out.writeLong(id);
+                    out.writeLong(balance);
+                    out.writeUTF(names.get(id));
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve("snapshot-" + segment + ".bin"), StandardCopyOption.ATOMIC_MOVE);
+
+        deleteOlderThan(segment, SNAPSHOT_FILE);
+        deleteOlderThan(segment, JOURNAL_FILE);
+    }
+
+    private void loadSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long balance = in.readLong();
+                put(id, in.readUTF(), balance);
+            }
+        }
+    }
+
+    private void apply(byte type, long firstId, long secondId, long amount) {
+        switch (type) {
+            case LedgerJournal.TRANSFER -> {
+                stripeFor(firstId).balances.add(firstId, -amount);
+                stripeFor(secondId).balances.add(secondId, amount);
+            }
+            case LedgerJournal.SET -> stripeFor(firstId).balances.put(firstId, amount);
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private void put(long id, String name, long balance) {
+        names.put(id, name);
+        stripeFor(id).balances.put(id, balance);
+    }
+
+    /**
+     * @return the highest segment number of the files matching the pattern, or -1 if there are none
+     */
+    private long latest(Pattern pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(f -> pattern.matcher(f.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .mapToLong(m -> Long.parseLong(m.group(1)))
+                    .max()
+                    .orElse(-1);
+        }
+    }
+
+    private void deleteOlderThan(long segment, Pattern pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Matcher m = pattern.matcher(file.getFileName().toString());
+                if (m.matches() && Long.parseLong(m.group(1)) < segment) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Account account(long id, long balance) {
+        Account account = new Account();
+        account.setId(id);
+        account.setName(names.get(id));
+        account.setAmount(BigDecimal.valueOf(balance, 2));
+        return account;
+    }
+
+    private Stripe stripeFor(long id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    /**
+     * Takes the stripe from the top bits of the product, while LongLongHashMap.hash() folds the low bits into
+     * the slot index: all the keys of a stripe sharing the low bits would leave most slots of its map unused.
+     */
+    private int stripeIndex(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> stripeShift) & (stripes.length - 1); //the mask makes a single stripe (shift 64) work
+    }
+
+    private static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongLongHashMap balances = new LongLongHashMap();
+    }
+}
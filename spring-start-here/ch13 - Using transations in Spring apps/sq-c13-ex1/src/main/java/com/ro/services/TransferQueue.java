@@ -0,0 +1,187 @@
+package com.ro.services;
+
+import com.ro.dto.TransferRequest;
+import com.ro.exceptions.TransferQueueFullException;
+import com.ro.exceptions.TransferQueueStoppedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group commit for transfers. Callers enqueue transfers into a bounded ring buffer (an ArrayBlockingQueue)
+ * and get a CompletableFuture back. A single writer thread drains whatever is pending, up to
+ * transfer.async.max-batch-size transfers, and applies them in one transaction, so the whole group
+ * costs one commit instead of one commit per transfer.
+ * <p>
+ * Each transfer runs in a nested transaction (a JDBC savepoint): if one of them fails, only its own
+ * changes are rolled back and the rest of the group is still committed.
+ */
+@Slf4j
+@Service
+public class TransferQueue {
+
+    private final TransferService transferService;
+    private final TransactionTemplate groupTransaction;
+    private final TransactionTemplate transferTransaction;
+    private final BlockingQueue<PendingTransfer> queue;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSize;
+    private final Counter rejected;
+    private final boolean enabled;
+    private Thread writer;
+    private volatile boolean stopping;
+
+    public TransferQueue(TransferService transferService,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${transfer.async.enabled:false}") boolean enabled,
+                         @Value("${transfer.async.capacity:10000}") int capacity,
+                         @Value("${transfer.async.max-batch-size:500}") int maxBatchSize) {
+        this.transferService = transferService;
+        this.groupTransaction = new TransactionTemplate(transactionManager);
+        this.transferTransaction = new TransactionTemplate(transactionManager);
+        this.transferTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.enabled = enabled;
+
+        Gauge.builder("transfer.queue.depth", queue, BlockingQueue::size)
+                .description("Transfers waiting for the writer thread")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("transfer.queue.batch.size")
+                .description("Transfers applied per transaction")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("transfer.queue.rejected")
+                .description("Transfers rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws TransferQueueFullException    if the queue is full; the caller should retry later
+     * @throws TransferQueueStoppedException if the queue is stopping, so the transfer would never be applied
+     */
+    public CompletableFuture<Void> submit(TransferRequest request) {
+        if (stopping) {
+            throw new TransferQueueStoppedException();
+        }
+        PendingTransfer pending = new PendingTransfer(request, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            rejected.increment();
+            throw new TransferQueueFullException();
+        }
+        if (stopping && queue.remove(pending)) {
+            //the writer may have drained the queue for the last time already; if the transfer is not in it
+            //any more, the writer took it and applies it
+            throw new TransferQueueStoppedException();
+        }
+        return pending.result();
+    }
+
+    /**
+     * The writer thread only runs with transfer.async.enabled; otherwise nothing is ever submitted.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        writer = new Thread(this::drain, "transfer-queue-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Refuses new transfers, then lets the writer apply the ones already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        writer.join();
+    }
+
+    private void drain() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take()); //wait for the first transfer, then take whatever else is already pending
+                queue.drainTo(batch, maxBatchSize - 1);
+                apply(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //shutting down: apply what was accepted so far
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    private void apply(List<PendingTransfer> batch) {
+        batchSize.record(batch.size());
+
+        List<RuntimeException> failures = new ArrayList<>(batch.size());
+        try {
+            groupTransaction.executeWithoutResult(status -> {
+                for (PendingTransfer pending : batch) {
+                    failures.add(applyOne(pending.request()));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not commit a group of {} transfers", batch.size(), e);
+            for (PendingTransfer pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        //the futures are completed only after the commit, so a caller never sees an uncommitted transfer
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<Void> result = batch.get(i).result();
+            if (failures.get(i) == null) {
+                result.complete(null);
+            } else {
+                result.completeExceptionally(failures.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return the exception the transfer failed with, or null if it was applied
+     */
+    private RuntimeException applyOne(TransferRequest request) {
+        try {
+            transferTransaction.executeWithoutResult(status -> transferService.transferMoney(
+                    request.getSenderAccountId(),
+                    request.getReceiverAccountId(),
+                    request.getAmount()));
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private record PendingTransfer(TransferRequest request, CompletableFuture<Void> result) {
+    }
+}
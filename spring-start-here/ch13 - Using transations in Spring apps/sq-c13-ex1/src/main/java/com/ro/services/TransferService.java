@@ -16,14 +16,7 @@ public class TransferService {
 
     @Transactional
     public void transferMoney(long idSender, long idReceiver, BigDecimal amount) {
-        Account sender = accountRepository.findAccountById(idSender);
-        Account receiver = accountRepository.findAccountById(idReceiver);
-
-        BigDecimal senderNewAmount = sender.getAmount().subtract(amount);
-        BigDecimal receiverNewAmount = receiver.getAmount().add(amount);
-
-        accountRepository.changeAmount(idSender, senderNewAmount);
-        accountRepository.changeAmount(idReceiver, receiverNewAmount);
+        accountRepository.transferAmount(idSender, idReceiver, amount);
     }
 
     public List<Account> getAllAccounts() {
@@ -0,0 +1,112 @@
+package com.ro.repositories;
+
+import com.ro.model.Account;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LedgerAccountRepositoryTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("Test the balances are rebuilt from the snapshot and the journal after a restart")
+    public void recoverAfterRestart() throws Exception {
+        //given - the account table is only read on the very first start
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.query(anyString(), any(RowMapper.class))).thenReturn(List.of(
+                account(1L, "Helen Down", "1000"),
+                account(2L, "Peter Read", "1000")));
+
+        LedgerAccountRepository ledger = new LedgerAccountRepository(jdbc, directory, 4, false);
+        ledger.recover();
+        ledger.transferAmount(1L, 2L, new BigDecimal("100.25"));
+        ledger.snapshot();
+        ledger.transferAmount(2L, 1L, new BigDecimal("50"));
+        ledger.changeAmount(1L, new BigDecimal("10"));
+        ledger.transferAmount(2L, 1L, new BigDecimal("0.75"));
+        ledger.close();
+
+        //when
+        LedgerAccountRepository restarted = new LedgerAccountRepository(jdbc, directory, 16, false);
+        restarted.recover();
+
+        //then
+        assertEquals(new BigDecimal("10.75"), restarted.findAccountById(1L).getAmount());
+        assertEquals(new BigDecimal("1049.50"), restarted.findAccountById(2L).getAmount());
+        assertEquals("Peter Read", restarted.findAccountById(2L).getName());
+        verify(jdbc, times(1)).query(anyString(), any(RowMapper.class));
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Test concurrent transfers in both directions keep the total balance, also after a restart")
+    public void concurrentTransfers() throws Exception {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        List<Account> accounts = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            accounts.add(account(id, "Account " + id, "1000"));
+        }
+        when(jdbc.query(anyString(), any(RowMapper.class))).thenReturn(accounts);
+
+        LedgerAccountRepository ledger = new LedgerAccountRepository(jdbc, directory, 4, false);
+        ledger.recover();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean reversed = t % 2 == 1;
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    long a = i % 10 + 1;
+                    long b = (i + 1) % 10 + 1;
+                    ledger.transferAmount(reversed ? b : a, reversed ? a : b, BigDecimal.ONE);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        BigDecimal total = ledger.findAllAccounts().stream()
+                .map(Account::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(new BigDecimal("10000.00"), total);
+        List<Account> before = ledger.findAllAccounts();
+        ledger.close();
+
+        //the journal records of the concurrent appends replay to the same balances
+        LedgerAccountRepository restarted = new LedgerAccountRepository(jdbc, directory, 4, false);
+        restarted.recover();
+        List<Account> after = restarted.findAllAccounts();
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getAmount(), after.get(i).getAmount());
+        }
+        restarted.close();
+    }
+
+    private static Account account(long id, String name, String amount) {
+        Account account = new Account();
+        account.setId(id);
+        account.setName(name);
+        account.setAmount(new BigDecimal(amount));
+        return account;
+    }
+}
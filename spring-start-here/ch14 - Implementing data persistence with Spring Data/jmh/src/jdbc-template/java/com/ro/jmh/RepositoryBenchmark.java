@@ -0,0 +1,50 @@
+package com.ro.jmh;
+
+import com.ro.model.Account;
+import com.ro.repositories.AccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JdbcTemplate repository (AccountRowMapper) of sq-c13-ex1, with the same operations as the
+ * Spring Data JDBC repository of sq-c14-ex1 in the spring-data-jdbc profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RepositoryBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal(1_000_000);
+
+    private AccountRepository accountRepository;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsState state) {
+        accountRepository = state.bean(AccountRepository.class);
+    }
+
+    @Benchmark
+    public Account findById(AccountsState state) {
+        return accountRepository.findAccountById(state.randomId());
+    }
+
+    @Benchmark
+    public List<Account> findAll() {
+        return accountRepository.findAllAccounts();
+    }
+
+    @Benchmark
+    public void changeAmount(AccountsState state) {
+        accountRepository.changeAmount(state.randomId(), AMOUNT);
+    }
+}
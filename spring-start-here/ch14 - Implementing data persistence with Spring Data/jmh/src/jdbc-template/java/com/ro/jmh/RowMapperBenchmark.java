@@ -0,0 +1,113 @@
+package com.ro.jmh;
+
+import com.ro.jdbc.CompiledRowMapper;
+import com.ro.model.Account;
+import com.ro.repositories.AccountRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The row mappers of sq-c13-ex1 over the whole account table: the hand-written AccountRowMapper (columns
+ * read by name), Spring's BeanPropertyRowMapper and CompiledRowMapper (columns read by index).
+ * <ul>
+ *     <li>map*: only the mapping, over a scrollable ResultSet that is read again for every invocation;</li>
+ *     <li>query*: JdbcTemplate.query(), i.e. the query and the mapping, as the repositories use them.</li>
+ * </ul>
+ * The scores are tables per millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RowMapperBenchmark {
+
+    private static final String SQL = "SELECT * FROM account";
+
+    private final RowMapper<Account> handWritten = new AccountRowMapper();
+    private final RowMapper<Account> beanProperty = new BeanPropertyRowMapper<>(Account.class);
+    private final CompiledRowMapper<Account> compiled = CompiledRowMapper.of(Account.class);
+    private JdbcTemplate jdbc;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsState state) {
+        jdbc = state.bean(JdbcTemplate.class);
+    }
+
+    /**
+     * The result of SQL, read once per thread.
+     */
+    @State(Scope.Thread)
+    public static class Rows {
+        private Connection connection;
+        private ResultSet resultSet;
+
+        @Setup(Level.Trial)
+        public void open(AccountsState state) throws SQLException {
+            connection = state.bean(DataSource.class).getConnection();
+            Statement statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            resultSet = statement.executeQuery(SQL);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            resultSet.close();
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public void mapHandWritten(Rows rows, Blackhole blackhole) throws SQLException {
+        map(rows.resultSet, handWritten, blackhole);
+    }
+
+    @Benchmark
+    public void mapBeanProperty(Rows rows, Blackhole blackhole) throws SQLException {
+        map(rows.resultSet, beanProperty, blackhole);
+    }
+
+    @Benchmark
+    public void mapCompiled(Rows rows, Blackhole blackhole) throws SQLException {
+        map(rows.resultSet, compiled.rowMapper(), blackhole);
+    }
+
+    @Benchmark
+    public List<Account> queryHandWritten() {
+        return jdbc.query(SQL, handWritten);
+    }
+
+    @Benchmark
+    public List<Account> queryBeanProperty() {
+        return jdbc.query(SQL, beanProperty);
+    }
+
+    @Benchmark
+    public List<Account> queryCompiled() {
+        return jdbc.query(SQL, compiled.rowMapper());
+    }
+
+    private static void map(ResultSet resultSet, RowMapper<Account> rowMapper, Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            blackhole.consume(rowMapper.mapRow(resultSet, rowNum++));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ro.jmh;
+
+import com.ro.Application;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The application under test (com.ro.Application of the module selected by the Maven profile), started
+ * without the web server against its embedded H2 database, which is filled with the given number of
+ * accounts. The same state class is used for both persistence approaches, so they get the same data.
+ */
+@State(Scope.Benchmark)
+public class AccountsState {
+
+    public static final int NAMES = 100;
+
+    @Param({"1000", "50000"})
+    public int accounts;
+
+    private ConfigurableApplicationContext context;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = SpringApplication.run(Application.class,
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN");
+
+        JdbcTemplate jdbc = bean(JdbcTemplate.class);
+        List<Integer> rows = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            rows.add(i);
+        }
+        jdbc.update("DELETE FROM account");
+        jdbc.batchUpdate("INSERT INTO account(name, amount) VALUES (?, ?)", rows, 1000, (ps, i) -> {
+            ps.setString(1, name(i));
+            ps.setInt(2, 1_000_000);
+        });
+        ids = jdbc.queryForList("SELECT id FROM account ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    /**
+     * @return the name of a random group of accounts (accounts / NAMES accounts share a name)
+     */
+    public String randomName() {
+        return name(ThreadLocalRandom.current().nextInt(NAMES));
+    }
+
+    private static String name(int i) {
+        return "Account " + (i % NAMES);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ro.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the benchmarks once per thread count (jmh.threads) and saves the results of every run as JSON.
+ * Each benchmark is measured twice: as throughput (ops/s) and as sampled latency, which gives the
+ * p50...p99.99 percentiles. The GC profiler adds the allocations per operation (gc.alloc.rate.norm).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String approach = System.getProperty("jmh.approach");
+        Path results = Path.of(System.getProperty("jmh.results", "target"));
+
+        for (String threads : System.getProperty("jmh.threads", "1,4").split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(System.getProperty("jmh.include", "com.ro.jmh.*"))
+                    .param("accounts", System.getProperty("jmh.accounts", "1000,50000").split(","))
+                    .threads(Integer.parseInt(threads.trim()))
+                    .forks(Integer.getInteger("jmh.forks", 1))
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(2))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(2))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(results.resolve("jmh-" + approach + "-" + threads.trim() + "t.json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
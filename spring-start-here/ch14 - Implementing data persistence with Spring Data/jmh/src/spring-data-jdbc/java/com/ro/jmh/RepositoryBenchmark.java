@@ -0,0 +1,50 @@
+package com.ro.jmh;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Spring Data JDBC CrudRepository of sq-c14-ex1, with the same operations as the JdbcTemplate
+ * repository of sq-c13-ex1 in the jdbc-template profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RepositoryBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinorUnits(1_000_000_00);
+
+    private AccountRepository accountRepository;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsState state) {
+        accountRepository = state.bean(AccountRepository.class);
+    }
+
+    @Benchmark
+    public Optional<Account> findById(AccountsState state) {
+        return accountRepository.findById(state.randomId());
+    }
+
+    @Benchmark
+    public Iterable<Account> findAll() {
+        return accountRepository.findAll();
+    }
+
+    @Benchmark
+    public void changeAmount(AccountsState state) {
+        accountRepository.changeAmount(state.randomId(), AMOUNT);
+    }
+}
@@ -0,0 +1,61 @@
+package com.ro.jmh;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.services.TransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransferService of sq-c14-ex1 (Spring Data JDBC). The jdbc-template profile has the same benchmarks
+ * for sq-c13-ex1, so the results can be compared by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferServiceBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinorUnits(1);
+
+    private TransferService transferService;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsState state) {
+        transferService = state.bean(TransferService.class);
+    }
+
+    /**
+     * @return false if the database aborted the transfer because of a concurrent one (a deadlock)
+     */
+    @Benchmark
+    public boolean transferMoney(AccountsState state) {
+        long sender = state.randomId();
+        long receiver = state.randomId();
+        try {
+            transferService.transferMoney(sender, receiver, AMOUNT);
+            return true;
+        } catch (ConcurrencyFailureException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public List<Account> findAccountsByName(AccountsState state) {
+        return transferService.findAccountsByName(state.randomName());
+    }
+
+    @Benchmark
+    public Iterable<Account> getAllAccounts() {
+        return transferService.getAllAccounts();
+    }
+}
@@ -0,0 +1,31 @@
+package com.ro.config;
+
+import com.ro.converters.MoneyStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jdbc.core.convert.JdbcCustomConversions;
+import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling //used by the journal compaction
+@EnableRetry //used by TransferService.transferMoney() in the OPTIMISTIC transfer mode
+@EnableCaching //creates the CacheManager used by AccountCache
+public class ProjectConfig {
+
+    @Bean
+    public MoneyStorage moneyStorage(@Value("${money.storage:DECIMAL}") MoneyStorage moneyStorage) {
+        return moneyStorage;
+    }
+
+    /**
+     * Replaces the JdbcCustomConversions bean of Spring Boot, so Spring Data JDBC knows how to read and
+     * write the Money amounts.
+     */
+    @Bean
+    public JdbcCustomConversions jdbcCustomConversions(MoneyStorage moneyStorage) {
+        return new JdbcCustomConversions(moneyStorage.converters());
+    }
+}
@@ -1,30 +1,163 @@
 package com.ro.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ro.dto.AccountPage;
+import com.ro.dto.AccountStatistics;
 import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.exceptions.InvalidAmountException;
+import com.ro.exceptions.InvalidIdempotencyKeyException;
 import com.ro.model.Account;
+import com.ro.search.NameMatch;
+import com.ro.services.IdempotencyStore;
+import com.ro.services.TransferQueue;
 import com.ro.services.TransferService;
+import com.ro.stats.AccountStats;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @RestController
 @RequiredArgsConstructor
 public class AccountController {
     private final TransferService transferService;
+    private final TransferQueue transferQueue;
+    private final IdempotencyStore idempotencyStore;
+    private final AccountStats accountStats;
+    private final ObjectMapper objectMapper;
+
+    @Value("${transfer.async.enabled:false}")
+    private boolean asyncTransfers;
+
+    @Value("${accounts.page.max-limit:1000}")
+    private int maxPageLimit = 1000;
+
+    /**
+     * A client that may retry the transfer (e.g. after a timeout) sends an Idempotency-Key header with a
+     * unique value per transfer; the retries with the same key are not applied again. The same key sent with
+     * another transfer gets 422.
+     */
     @PostMapping("/transfer")
-    public void transferMoney(@RequestBody TransferRequest request) {
-        transferService.transferMoney(
-                request.getSenderAccountId(),
-                request.getReceiverAccountId(),
-                request.getAmount());
-    }
-    @GetMapping("/accounts")
-    public Iterable<Account> getAllAccounts(@RequestParam(required = false) String name) {
+    public CompletableFuture<Void> transferMoney(@RequestBody TransferRequest request,
+                                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (!TransferService.isValidAmount(request.getAmount())) {
+            throw new InvalidAmountException();
+        }
+        if (idempotencyKey == null) {
+            return transfer(request);
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException();
+        }
+        request.setIdempotencyKey(idempotencyKey);
+        String requestHash = IdempotencyStore.requestHash(
+                request.getSenderAccountId(), request.getReceiverAccountId(), request.getAmount());
+        return idempotencyStore.execute(idempotencyKey, requestHash, () -> transfer(request));
+    }
+
+    private CompletableFuture<Void> transfer(TransferRequest request) {
+        if (asyncTransfers) {
+            //the response is sent when the writer thread has committed the group containing this transfer
+            return transferQueue.submit(request);
+        }
+        if (request.getIdempotencyKey() != null) {
+            transferService.transferMoney(
+                    request.getSenderAccountId(),
+                    request.getReceiverAccountId(),
+                    request.getAmount(),
+                    request.getIdempotencyKey());
+        } else {
+            transferService.transferMoney(
+                    request.getSenderAccountId(),
+                    request.getReceiverAccountId(),
+                    request.getAmount());
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+    @PostMapping("/transfers/batch")
+    public List<TransferResult> transferMoneyBatch(@RequestBody List<TransferRequest> requests) {
+        return transferService.transferMoneyBatch(requests);
+    }
+    @PostMapping("/transfers/chain")
+    public void transferChain(@RequestBody List<TransferRequest> legs) {
+        transferService.transferChain(legs);
+    }
+    @GetMapping("/accounts/stats")
+    public AccountStatistics getAccountStatistics() {
+        return accountStats.snapshot();
+    }
+    @GetMapping(value = "/accounts", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Iterable<Account> getAllAccounts(@RequestParam(required = false) String name,
+                                            @RequestParam(defaultValue = "EXACT") NameMatch match) {
         if (name == null) {
             return transferService.getAllAccounts();
         } else {
-            return transferService.findAccountsByName(name);
+            return transferService.findAccountsByName(name, match);
+        }
+    }
+
+    /**
+     * Keyset pagination: GET /accounts?limit=100, then GET /accounts?limit=100&after={nextAfter of the page}.
+     */
+    @GetMapping(value = "/accounts", params = {"limit", "!name"})
+    public AccountPage getAccountsPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return transferService.getAccountsPage(after, Math.max(1, Math.min(limit, maxPageLimit)));
+    }
+
+    /**
+     * With Accept: application/x-ndjson every account is written as one JSON line while the rows are read,
+     * instead of building the whole list first. Only the first line is flushed right away (for a short
+     * time to first byte); the rest is sent whenever the response buffer fills up.
+     */
+    @GetMapping(value = "/accounts", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAccounts(@RequestParam(required = false) String name) {
+        ObjectWriter writer = objectMapper.writer();
+        StreamingResponseBody body = out -> {
+            AtomicBoolean first = new AtomicBoolean(true);
+            Consumer<Account> lineWriter = account -> {
+                writeLine(writer, out, account);
+                if (first.compareAndSet(true, false)) {
+                    flush(out);
+                }
+            };
+            if (name == null) {
+                transferService.forEachAccount(lineWriter);
+            } else {
+                transferService.findAccountsByName(name).forEach(lineWriter);
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private static void writeLine(ObjectWriter writer, OutputStream out, Object value) {
+        try {
+            out.write(writer.writeValueAsBytes(value));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 }
@@ -0,0 +1,45 @@
+package com.ro.converters;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.ro.model.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Reads Money from a JSON number or string. Whole numbers (the common case, e.g. "amount": 100)
+ * are converted without going through BigDecimal.
+ * <p>
+ * An amount with more than two fraction digits (e.g. 0.005) or out of the range of Money is rejected
+ * rather than rounded, so the request fails with 400 Bad Request instead of transferring another amount.
+ */
+public class MoneyJsonDeserializer extends StdDeserializer<Money> {
+
+    public MoneyJsonDeserializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public Money deserialize(JsonParser p, DeserializationContext context) throws IOException {
+        JsonToken token = p.currentToken();
+        try {
+            if (token == JsonToken.VALUE_NUMBER_INT && p.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                return Money.ofMinorUnits(Math.multiplyExact(p.getLongValue(), 100L));
+            }
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                return Money.ofExact(p.getDecimalValue());
+            }
+            if (token == JsonToken.VALUE_STRING) {
+                return Money.ofExact(new BigDecimal(p.getText().trim()));
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw InvalidFormatException.from(p, "Not an amount with at most two fraction digits: " + p.getText(),
+                    p.getText(), Money.class);
+        }
+        return (Money) context.handleUnexpectedToken(Money.class, p);
+    }
+}
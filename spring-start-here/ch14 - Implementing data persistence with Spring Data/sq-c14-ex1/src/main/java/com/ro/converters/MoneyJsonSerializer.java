@@ -0,0 +1,23 @@
+package com.ro.converters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.ro.model.Money;
+
+import java.io.IOException;
+
+/**
+ * Writes Money as a JSON number (e.g. 1000.50) straight from the minor units, without a BigDecimal.
+ */
+public class MoneyJsonSerializer extends StdSerializer<Money> {
+
+    public MoneyJsonSerializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public void serialize(Money value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeNumber(value.toString());
+    }
+}
@@ -0,0 +1,87 @@
+package com.ro.converters;
+
+import com.ro.model.Money;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * How the account table stores Money (money.storage).
+ */
+public enum MoneyStorage {
+    /**
+     * A decimal column (the DOUBLE amount of schema.sql).
+     */
+    DECIMAL {
+        @Override
+        public Object toJdbcValue(Money money) {
+            return money.toBigDecimal();
+        }
+
+        @Override
+        public List<Object> converters() {
+            return List.of(new MoneyToBigDecimalConverter(), new NumberToMoneyConverter());
+        }
+    },
+    /**
+     * A BIGINT column holding minor units (schema-minor-units.sql); rows are mapped without BigDecimal.
+     */
+    MINOR_UNITS {
+        @Override
+        public Object toJdbcValue(Money money) {
+            return money.minorUnits();
+        }
+
+        @Override
+        public List<Object> converters() {
+            return List.of(new MoneyToLongConverter(), new LongToMoneyConverter());
+        }
+    };
+
+    /**
+     * @return the value to bind to a JDBC parameter, for the code that doesn't go through Spring Data
+     */
+    public abstract Object toJdbcValue(Money money);
+
+    /**
+     * @return the Spring Data JDBC converters between Money and the column type
+     */
+    public abstract List<Object> converters();
+
+    @WritingConverter
+    static class MoneyToBigDecimalConverter implements Converter<Money, BigDecimal> {
+        @Override
+        public BigDecimal convert(Money source) {
+            return source.toBigDecimal();
+        }
+    }
+
+    @ReadingConverter
+    static class NumberToMoneyConverter implements Converter<Number, Money> {
+        @Override
+        public Money convert(Number source) {
+            return source instanceof BigDecimal decimal
+                    ? Money.of(decimal)
+                    : Money.of(new BigDecimal(source.toString())); //toString keeps a DOUBLE like 0.1 exact
+        }
+    }
+
+    @WritingConverter
+    static class MoneyToLongConverter implements Converter<Money, Long> {
+        @Override
+        public Long convert(Money source) {
+            return source.minorUnits();
+        }
+    }
+
+    @ReadingConverter
+    static class LongToMoneyConverter implements Converter<Long, Money> {
+        @Override
+        public Money convert(Long source) {
+            return Money.ofMinorUnits(source);
+        }
+    }
+}
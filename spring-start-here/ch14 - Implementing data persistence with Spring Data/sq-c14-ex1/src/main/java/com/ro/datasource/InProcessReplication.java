@@ -0,0 +1,57 @@
+package com.ro.datasource;
+
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the replication of a real database, to run the primary and the replica as two in-memory H2
+ * databases: every datasource.replica.replication-interval ms the account and replication_heartbeat tables
+ * of the primary are copied to the replica, in one replica transaction. Its lag is measured like the lag of
+ * a real replica, by ReplicaLagMonitor.
+ */
+public class InProcessReplication {
+
+    private static final List<String> TABLES = List.of("account", "replication_heartbeat");
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final TransactionTemplate replicaTransaction;
+
+    public InProcessReplication(DataSource primary, DataSource replica, Resource schema) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.replicaTransaction = new TransactionTemplate(new DataSourceTransactionManager(replica));
+        new ResourceDatabasePopulator(schema).execute(replica);
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.replication-interval:500}")
+    public void replicate() {
+        Map<String, List<Object[]>> rows = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            rows.put(table, primary.query("SELECT * FROM " + table, (rs, rowNum) -> {
+                Object[] row = new Object[rs.getMetaData().getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                return row;
+            }));
+        }
+        replicaTransaction.executeWithoutResult(status -> rows.forEach((table, tableRows) -> {
+            replica.update("DELETE FROM " + table);
+            if (!tableRows.isEmpty()) {
+                String placeholders = String.join(", ", Collections.nCopies(tableRows.get(0).length, "?"));
+                replica.batchUpdate("INSERT INTO " + table + " VALUES (" + placeholders + ")", tableRows);
+            }
+        }));
+    }
+}
@@ -0,0 +1,79 @@
+package com.ro.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Gives the read-only transactions (@Transactional(readOnly = true)) a connection of the replica and
+ * everything else a connection of the primary. While the replica lags behind the primary by more than
+ * maxStaleness, the read-only transactions use the primary too. The lag is a measure taken in the background
+ * (see ReplicaLagMonitor), and the connections are only counted in LongAdders that the metrics read when
+ * they are published, so routing a connection is a few field reads.
+ * <p>
+ * It must be wrapped in a LazyConnectionDataSourceProxy: the transaction manager gets the connection
+ * before it marks the transaction as read-only, and the proxy only gets the real one at the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route {PRIMARY, REPLICA}
+
+    private final Supplier<Duration> replicaLag;
+    private final Duration maxStaleness;
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+    private final LongAdder staleReplicaConnections = new LongAdder();
+
+    public ReadWriteRoutingDataSource(DataSource primary,
+                                      DataSource replica,
+                                      Supplier<Duration> replicaLag,
+                                      Duration maxStaleness,
+                                      MeterRegistry meterRegistry) {
+        this.replicaLag = replicaLag;
+        this.maxStaleness = maxStaleness;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+
+        connections(meterRegistry, "primary", primaryConnections);
+        connections(meterRegistry, "replica", replicaConnections);
+        FunctionCounter.builder("datasource.routing.stale", staleReplicaConnections, LongAdder::sum)
+                .description("Read-only connections sent to the primary because the replica lagged too much")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replica.lag", () -> seconds(replicaLag.get()))
+                .description("How far the replica is behind the primary")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static void connections(MeterRegistry meterRegistry, String route, LongAdder count) {
+        FunctionCounter.builder("datasource.routing.connections", count, LongAdder::sum)
+                .description("Connections taken from the primary or from the replica")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    private static double seconds(Duration duration) {
+        return duration.getSeconds() + duration.getNano() / 1e9; //toMillis() overflows for the infinite lag
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (replicaLag.get().compareTo(maxStaleness) <= 0) {
+                replicaConnections.increment();
+                return Route.REPLICA;
+            }
+            staleReplicaConnections.increment();
+        }
+        primaryConnections.increment();
+        return Route.PRIMARY;
+    }
+}
@@ -0,0 +1,93 @@
+package com.ro.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * With datasource.replica.enabled=true the application DataSource is a ReadWriteRoutingDataSource over two
+ * pools: the primary (the spring.datasource settings) and the replica (the datasource.replica settings).
+ * The two pools aren't autowire candidates, so everything (repositories, JdbcTemplate, transaction manager,
+ * SQL initialization) uses the routing one.
+ * <p>
+ * The lag of the replica is measured by ReplicaLagMonitor, through the replication_heartbeat table. With
+ * datasource.replica.in-process-replication=true (for a local H2 replica) InProcessReplication keeps the
+ * replica up to date; otherwise the replica is kept up to date by the database itself.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    private final DataSourceProperties primaryProperties;
+
+    @Value("${datasource.replica.url}")
+    private String replicaUrl;
+
+    @Value("${datasource.replica.username:sa}")
+    private String replicaUsername;
+
+    @Value("${datasource.replica.password:}")
+    private String replicaPassword;
+
+    @Value("${datasource.replica.maximum-pool-size:10}")
+    private int replicaMaximumPoolSize = 10;
+
+    @Value("${datasource.replica.max-staleness:2s}")
+    private Duration maxStaleness = Duration.ofSeconds(2);
+
+    public ReplicaDataSourceConfig(DataSourceProperties primaryProperties) {
+        this.primaryProperties = primaryProperties;
+    }
+
+    @Bean(autowireCandidate = false)
+    public HikariDataSource primaryDataSource() {
+        HikariDataSource dataSource = primaryProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(autowireCandidate = false)
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setMaximumPoolSize(replicaMaximumPoolSize);
+        return dataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datasource.replica.in-process-replication", havingValue = "true")
+    public InProcessReplication inProcessReplication(
+            @Value("${spring.sql.init.schema-locations:classpath:schema.sql}") Resource schema) {
+        return new InProcessReplication(primaryDataSource(), replicaDataSource(), schema);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor() {
+        return new ReplicaLagMonitor(primaryDataSource(), replicaDataSource());
+    }
+
+    @Bean
+    @Primary //for the @ConditionalOnSingleCandidate(DataSource.class) of the auto-configurations
+    public DataSource dataSource(MeterRegistry meterRegistry) {
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(
+                primaryDataSource(), replicaDataSource(), replicaLagMonitor()::lag, maxStaleness, meterRegistry);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ro.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Measures the lag of the replica with a heartbeat row: every datasource.replica.heartbeat-interval ms the
+ * current time is written to the replication_heartbeat table of the primary, and the time replicated so far
+ * is read back from the replica. The lag is how old that time is, so it's measured on the replica whatever
+ * replicates it (the database itself or InProcessReplication), give or take one heartbeat-interval.
+ * <p>
+ * lag() only returns the last measure, so routing a connection doesn't query anything. The lag is infinite
+ * until the first heartbeat reaches the replica, and when the replica can't be read.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final Duration UNKNOWN = ChronoUnit.FOREVER.getDuration();
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private volatile Duration lag = UNKNOWN;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.heartbeat-interval:200}")
+    public void beat() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update("UPDATE replication_heartbeat SET beat_millis = ? WHERE id = 1", now) == 0) {
+                primary.update("INSERT INTO replication_heartbeat(id, beat_millis) VALUES (1, ?)", now);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not write the replication heartbeat on the primary", e);
+        }
+
+        try {
+            List<Long> replicated = replica.queryForList(
+                    "SELECT beat_millis FROM replication_heartbeat WHERE id = 1", Long.class);
+            lag = replicated.isEmpty() ? UNKNOWN : Duration.ofMillis(Math.max(0, now - replicated.get(0)));
+        } catch (DataAccessException e) {
+            log.warn("Could not read the replication heartbeat on the replica", e);
+            lag = UNKNOWN;
+        }
+    }
+
+    public Duration lag() {
+        return lag;
+    }
+}
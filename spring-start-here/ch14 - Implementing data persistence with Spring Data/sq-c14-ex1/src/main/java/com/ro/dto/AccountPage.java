@@ -0,0 +1,18 @@
+package com.ro.dto;
+
+import com.ro.model.Account;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of GET /accounts?limit=..., ordered by id. The next page is requested with after=nextAfter;
+ * nextAfter is null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class AccountPage {
+    private List<Account> accounts;
+    private Long nextAfter;
+}
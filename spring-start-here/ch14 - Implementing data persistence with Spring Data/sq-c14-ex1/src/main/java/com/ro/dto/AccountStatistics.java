@@ -0,0 +1,26 @@
+package com.ro.dto;
+
+import com.ro.model.Money;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Response of GET /accounts/stats. minBalance and maxBalance are null when there are no accounts.
+ */
+@Getter
+@AllArgsConstructor
+public class AccountStatistics {
+    private long count;
+    private Money totalBalance;
+    private Money minBalance;
+    private Money maxBalance;
+    private List<Bucket> histogram;
+
+    /**
+     * The accounts with from <= balance < to; from is null for the first bucket, to for the last one.
+     */
+    public record Bucket(Money from, Money to, long count) {
+    }
+}
@@ -1,14 +1,17 @@
 package com.ro.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ro.model.Money;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.math.BigDecimal;
-
 @Getter
 @Setter
 public class TransferRequest {
     private long senderAccountId;
     private long receiverAccountId;
-    private BigDecimal amount;
+    private Money amount;
+
+    @JsonIgnore //from the Idempotency-Key header of POST /transfer, see IdempotencyStore
+    private String idempotencyKey;
 }
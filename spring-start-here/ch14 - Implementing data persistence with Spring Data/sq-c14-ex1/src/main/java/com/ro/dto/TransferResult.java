@@ -0,0 +1,18 @@
+package com.ro.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import com.ro.model.Money;
+
+/**
+ * The outcome of one item of a batch transfer request.
+ */
+@Getter
+@AllArgsConstructor
+public class TransferResult {
+    private long senderAccountId;
+    private long receiverAccountId;
+    private Money amount;
+    private TransferStatus status;
+}
@@ -0,0 +1,10 @@
+package com.ro.dto;
+
+public enum TransferStatus {
+    COMPLETED,
+    ALREADY_APPLIED, //an earlier transfer with the same Idempotency-Key was applied, this one was not applied again
+    ACCOUNT_NOT_FOUND,
+    INSUFFICIENT_FUNDS,
+    INVALID_AMOUNT, //the amount was missing, zero or negative
+    IDEMPOTENCY_KEY_REUSED //the Idempotency-Key was recorded for a different transfer, this one was not applied
+}
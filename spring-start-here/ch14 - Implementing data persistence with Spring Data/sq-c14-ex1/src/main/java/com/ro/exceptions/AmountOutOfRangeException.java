@@ -0,0 +1,7 @@
+package com.ro.exceptions;
+
+/**
+ * An amount, or a balance computed from it, that doesn't fit the long number of minor units of Money.
+ */
+public class AmountOutOfRangeException extends ArithmeticException {
+}
@@ -0,0 +1,83 @@
+package com.ro.exceptions;
+
+import com.ro.exceptions.model.ErrorDetails;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ExceptionControllerAdvice {
+
+    @ExceptionHandler(TransferQueueFullException.class)
+    public ResponseEntity<ErrorDetails> exceptionTransferQueueFullHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("Too many pending transfers, try again later");
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(TransferQueueStoppedException.class)
+    public ResponseEntity<ErrorDetails> exceptionTransferQueueStoppedHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The service is shutting down, try again later");
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(AccountNotFoundException.class)
+    public ResponseEntity<ErrorDetails> exceptionAccountNotFoundHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("Account not found");
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(InsufficientFundsException.class)
+    public ResponseEntity<ErrorDetails> exceptionInsufficientFundsHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("Not enough money to make the transfer");
+        return ResponseEntity
+                .unprocessableEntity()
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(AmountOutOfRangeException.class)
+    public ResponseEntity<ErrorDetails> exceptionAmountOutOfRangeHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The amount is too large");
+        return ResponseEntity
+                .badRequest()
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(InvalidAmountException.class)
+    public ResponseEntity<ErrorDetails> exceptionInvalidAmountHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The amount must be positive");
+        return ResponseEntity
+                .badRequest()
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<ErrorDetails> exceptionInvalidIdempotencyKeyHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The Idempotency-Key header must be 1 to 64 characters long");
+        return ResponseEntity
+                .badRequest()
+                .body(errorDetails);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<ErrorDetails> exceptionIdempotencyKeyReusedHandler() {
+        ErrorDetails errorDetails = new ErrorDetails();
+        errorDetails.setMessage("The Idempotency-Key was already used for a different transfer");
+        return ResponseEntity
+                .unprocessableEntity()
+                .body(errorDetails);
+    }
+}
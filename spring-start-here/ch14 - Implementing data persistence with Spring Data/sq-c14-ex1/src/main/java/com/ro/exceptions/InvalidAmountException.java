@@ -0,0 +1,7 @@
+package com.ro.exceptions;
+
+/**
+ * A transfer amount that is missing, zero or negative.
+ */
+public class InvalidAmountException extends RuntimeException {
+}
@@ -0,0 +1,4 @@
+package com.ro.exceptions;
+
+public class InvalidIdempotencyKeyException extends RuntimeException {
+}
@@ -0,0 +1,4 @@
+package com.ro.exceptions;
+
+public class TransferQueueStoppedException extends RuntimeException {
+}
@@ -0,0 +1,10 @@
+package com.ro.exceptions.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ErrorDetails {
+    private String message;
+}
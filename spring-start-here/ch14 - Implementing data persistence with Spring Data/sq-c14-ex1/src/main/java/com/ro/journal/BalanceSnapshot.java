@@ -0,0 +1,131 @@
+package com.ro.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The balance (in minor units) and name of every account after the journal record with the given sequence.
+ */
+public class BalanceSnapshot {
+
+    private long sequence;
+    private final Map<Long, Long> balances = new TreeMap<>();
+    private final Map<Long, String> names = new TreeMap<>();
+
+    public BalanceSnapshot(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public Map<Long, Long> balances() {
+        return balances;
+    }
+
+    public String name(long id) {
+        return names.get(id);
+    }
+
+    public void put(long id, String name, long balance) {
+        names.put(id, name);
+        balances.put(id, balance);
+    }
+
+    /**
+     * Applies the record if it is newer than the snapshot. An account inserted after the snapshot has no
+     * name yet; see idsWithoutName().
+     *
+     * @throws IllegalStateException if the record refers to an account the snapshot doesn't have: the journal
+     *                               and the snapshot don't match, and the balances can't be trusted
+     */
+    public void apply(JournalRecord record) {
+        if (record.sequence() <= sequence) {
+            return;
+        }
+        if (record.isBalanceSet()) {
+            names.putIfAbsent(record.receiverAccountId(), null);
+            balances.put(record.receiverAccountId(), record.amount());
+        } else if (record.isDelete()) {
+            checkKnown(record, record.senderAccountId());
+            names.remove(record.senderAccountId());
+            balances.remove(record.senderAccountId());
+        } else {
+            checkKnown(record, record.senderAccountId());
+            checkKnown(record, record.receiverAccountId());
+            balances.merge(record.senderAccountId(), -record.amount(), Long::sum);
+            balances.merge(record.receiverAccountId(), record.amount(), Long::sum);
+        }
+        sequence = record.sequence();
+    }
+
+    private void checkKnown(JournalRecord record, long id) {
+        if (!balances.containsKey(id)) {
+            throw new IllegalStateException("Journal record " + record.sequence() + " refers to the unknown account " + id);
+        }
+    }
+
+    /**
+     * @return the accounts inserted after the snapshot, whose names the journal doesn't record
+     */
+    public List<Long> idsWithoutName() {
+        List<Long> ids = new ArrayList<>();
+        names.forEach((id, name) -> {
+            if (name == null) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    public void name(long id, String name) {
+        names.put(id, name);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, so a crash never leaves a half written snapshot.
+     */
+    public void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(sequence);
+            out.writeInt(balances.size());
+            for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                out.writeLong(balance.getKey());
+                out.writeLong(balance.getValue());
+                String name = names.get(balance.getKey());
+                out.writeUTF(name != null ? name : "");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static BalanceSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            BalanceSnapshot snapshot = new BalanceSnapshot(in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long balance = in.readLong();
+                snapshot.put(id, in.readUTF(), balance);
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.ro.journal;
+
+import com.ro.converters.MoneyStorage;
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import com.ro.search.AccountNameIndex;
+import com.ro.services.AccountCache;
+import com.ro.stats.AccountStats;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the journal small and turns it back into an account table.
+ * <ul>
+ *     <li>On the first start it saves the account table as the snapshot the journal starts from.</li>
+ *     <li>Periodically it folds the full (sealed) segments into a new balance snapshot and deletes them.</li>
+ *     <li>With transfer.journal.restore-on-startup=true it reconciles the account table with the latest
+ *     snapshot and the remaining segments: the missing accounts are inserted and the balances that differ
+ *     are updated, with batch statements instead of re-running every transfer. Accounts the journal doesn't
+ *     know (e.g. inserted with plain SQL) are left as they are.</li>
+ * </ul>
+ * A journal record that refers to an account the snapshot doesn't have makes compaction and restore fail,
+ * since the balances computed from such a journal can't be trusted.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.journal.enabled", havingValue = "true")
+public class JournalCompactor {
+
+    private static final String SNAPSHOT_PREFIX = "balances-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final TransferJournal journal;
+    private final AccountRepository accountRepository;
+    private final AccountCache accountCache;
+    private final AccountNameIndex accountNameIndex;
+    private final AccountStats accountStats;
+    private final JdbcTemplate jdbc;
+    private final MoneyStorage moneyStorage;
+    private final TransactionTemplate transaction;
+
+    @Value("${transfer.journal.restore-on-startup:false}")
+    private boolean restoreOnStartup;
+
+    public JournalCompactor(TransferJournal journal, AccountRepository accountRepository, AccountCache accountCache,
+                            AccountNameIndex accountNameIndex, AccountStats accountStats, JdbcTemplate jdbc,
+                            MoneyStorage moneyStorage,
+                            PlatformTransactionManager transactionManager) {
+        this.journal = journal;
+        this.accountRepository = accountRepository;
+        this.accountCache = accountCache;
+        this.accountNameIndex = accountNameIndex;
+        this.accountStats = accountStats;
+        this.jdbc = jdbc;
+        this.moneyStorage = moneyStorage;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (latestSnapshotFile() == null) {
+            //first start: the account table is the state before the first journaled transfer
+            BalanceSnapshot baseline = new BalanceSnapshot(journal.lastSequence());
+            for (Account account : accountRepository.findAll()) {
+                baseline.put(account.getId(), account.getName(), account.getAmount().minorUnits());
+            }
+            baseline.write(snapshotFile(baseline.sequence()));
+        } else if (restoreOnStartup) {
+            restoreAccountTable();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.journal.compaction-interval:60000}")
+    public void compact() throws IOException {
+        String current = journal.currentSegment().getFileName().toString();
+        List<Path> sealed = journal.segments().stream()
+                .filter(s -> s.getFileName().toString().compareTo(current) < 0)
+                .toList();
+        if (sealed.isEmpty()) {
+            return;
+        }
+
+        BalanceSnapshot snapshot = BalanceSnapshot.read(latestSnapshotFile());
+        for (Path segment : sealed) {
+            TransferJournal.read(segment, snapshot::apply);
+        }
+        //the journal doesn't record the names of the accounts inserted since the last snapshot
+        for (Account account : accountRepository.findAllById(snapshot.idsWithoutName())) {
+            snapshot.name(account.getId(), account.getName());
+        }
+        snapshot.write(snapshotFile(snapshot.sequence()));
+
+        for (Path file : snapshotFiles()) {
+            if (!file.equals(snapshotFile(snapshot.sequence()))) {
+                Files.delete(file);
+            }
+        }
+        for (Path segment : sealed) {
+            Files.delete(segment);
+        }
+        log.info("Compacted {} journal segments into the snapshot at sequence {}", sealed.size(), snapshot.sequence());
+    }
+
+    /**
+     * Brings the account table in line with the balances recorded by the journal, without touching the
+     * accounts the journal doesn't know.
+     *
+     * @return the number of inserted or updated accounts
+     */
+    public int restoreAccountTable() throws IOException {
+        BalanceSnapshot snapshot = BalanceSnapshot.read(latestSnapshotFile());
+        for (Path segment : journal.segments()) {
+            TransferJournal.read(segment, snapshot::apply);
+        }
+
+        int[] changed = new int[1];
+        transaction.executeWithoutResult(status -> {
+            Map<Long, Account> table = new HashMap<>();
+            for (Account account : accountRepository.findAll()) {
+                table.put(account.getId(), account);
+            }
+
+            List<Map.Entry<Long, Long>> missing = new ArrayList<>();
+            List<Map.Entry<Long, Long>> different = new ArrayList<>();
+            for (Map.Entry<Long, Long> balance : snapshot.balances().entrySet()) {
+                Account account = table.remove(balance.getKey());
+                if (account == null) {
+                    missing.add(balance);
+                } else if (account.getAmount().minorUnits() != balance.getValue()) {
+                    different.add(balance);
+                }
+            }
+            if (!table.isEmpty()) {
+                log.warn("Accounts {} are not in the journal and were left unchanged", table.keySet());
+            }
+
+            jdbc.batchUpdate("INSERT INTO account(id, name, amount) VALUES (?, ?, ?)", missing, 1000, (ps, balance) -> {
+                ps.setLong(1, balance.getKey());
+                ps.setString(2, snapshot.name(balance.getKey()) != null ? snapshot.name(balance.getKey()) : "");
+                ps.setObject(3, moneyStorage.toJdbcValue(Money.ofMinorUnits(balance.getValue())));
+            });
+            jdbc.batchUpdate("UPDATE account SET amount = ?, version = version + 1 WHERE id = ?", different, 1000, (ps, balance) -> {
+                ps.setObject(1, moneyStorage.toJdbcValue(Money.ofMinorUnits(balance.getValue())));
+                ps.setLong(2, balance.getKey());
+            });
+            if (!missing.isEmpty()) {
+                //the ids were inserted explicitly, so move the identity past them
+                Long maxId = jdbc.queryForObject("SELECT MAX(id) FROM account", Long.class);
+                jdbc.execute("ALTER TABLE account ALTER COLUMN id RESTART WITH " + (maxId + 1));
+            }
+            changed[0] = missing.size() + different.size();
+        });
+        accountCache.clear();
+        accountNameIndex.rebuild();
+        accountStats.rebuild();
+        log.info("Reconciled the account table with the journal at sequence {}: {} accounts inserted or updated",
+                snapshot.sequence(), changed[0]);
+        return changed[0];
+    }
+
+    private Path snapshotFile(long sequence) {
+        return journal.directory().resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+
+    private Path latestSnapshotFile() throws IOException {
+        List<Path> snapshots = snapshotFiles();
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(journal.directory())) {
+            return files.filter(f -> f.getFileName().toString().startsWith(SNAPSHOT_PREFIX)
+                            && f.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
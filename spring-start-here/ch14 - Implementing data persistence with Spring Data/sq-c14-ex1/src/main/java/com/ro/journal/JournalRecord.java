@@ -0,0 +1,21 @@
+package com.ro.journal;
+
+/**
+ * One change as stored in the journal. The amount is in minor units (cents), the timestamp in epoch millis.
+ * Account ids start at 1, so an id of 0 (TransferJournal.NO_ACCOUNT) marks the records that are not transfers:
+ * <ul>
+ *     <li>sender 0: the balance of the receiver account is set to the amount (it was inserted or saved)</li>
+ *     <li>receiver 0: the sender account was deleted</li>
+ * </ul>
+ * A negative amount reverses a transfer whose transaction rolled back after it was journaled.
+ */
+public record JournalRecord(long sequence, long senderAccountId, long receiverAccountId, long amount, long timestamp) {
+
+    public boolean isBalanceSet() {
+        return senderAccountId == TransferJournal.NO_ACCOUNT;
+    }
+
+    public boolean isDelete() {
+        return receiverAccountId == TransferJournal.NO_ACCOUNT;
+    }
+}
@@ -0,0 +1,236 @@
+package com.ro.journal;
+
+import com.ro.model.Account;
+import com.ro.repositories.AccountRepository;
+import com.ro.services.TransferCompletedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only audit trail of the transfers, written to memory-mapped files. The accounts inserted, saved or
+ * deleted through Spring Data are journaled too (see JournalRecord), so the journal knows every account a
+ * transfer can refer to. Changes made with plain SQL are not journaled.
+ * <p>
+ * The records are appended before the commit (write-ahead): a change that can't be journaled is rolled back,
+ * so no committed change is missing from the journal. If the commit fails after the append, a record undoing
+ * it is appended. Only a crash between the append and the commit leaves a record of a change that was never
+ * committed.
+ * <p>
+ * Every record has the same size (sequence, sender, receiver, amount in minor units, timestamp:
+ * 8 bytes each), so a segment file is preallocated for transfer.journal.segment-records records and
+ * appending is just a few writes into the mapped page cache, without a system call or an SQL insert.
+ * When a segment is full it is flushed and a new one is started. Segments are named after the sequence
+ * of their first record. A slot whose sequence is 0 marks the end of the written records.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.journal.enabled", havingValue = "true")
+public class TransferJournal {
+
+    public static final long NO_ACCOUNT = 0;
+    static final int RECORD_SIZE = 5 * Long.BYTES;
+    private static final String SEGMENT_PREFIX = "transfers-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final AccountRepository accountRepository;
+    private final Path directory;
+    private final int segmentRecords;
+    private MappedByteBuffer segment;
+    private Path segmentFile;
+    private long nextSequence;
+
+    public TransferJournal(AccountRepository accountRepository,
+                           @Value("${transfer.journal.directory:journal-data}") Path directory,
+                           @Value("${transfer.journal.segment-records:1000000}") int segmentRecords) throws IOException {
+        this.accountRepository = accountRepository;
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        open();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onTransferCompleted(TransferCompletedEvent event) {
+        long sender = event.senderAccountId();
+        long receiver = event.receiverAccountId();
+        long amount = event.amount().minorUnits();
+        append(sender, receiver, amount, System.currentTimeMillis());
+        onRollback(() -> append(sender, receiver, -amount, System.currentTimeMillis()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onAccountSaved(AfterSaveEvent<?> event) {
+        if (event.getEntity() instanceof Account account) {
+            append(NO_ACCOUNT, account.getId(), account.getAmount().minorUnits(), System.currentTimeMillis());
+            onRollback(() -> appendCommittedState(account.getId()));
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onAccountDeleted(AfterDeleteEvent<?> event) {
+        if (event.getType() == Account.class) {
+            long id = (Long) event.getId().getValue();
+            append(id, NO_ACCOUNT, 0, System.currentTimeMillis());
+            onRollback(() -> appendCommittedState(id));
+        }
+    }
+
+    private void onRollback(Runnable undo) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        undo.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Journals the account as it is in the table, after the transaction that saved or deleted it rolled back.
+     */
+    private void appendCommittedState(long id) {
+        accountRepository.findById(id).ifPresentOrElse(
+                account -> append(NO_ACCOUNT, id, account.getAmount().minorUnits(), System.currentTimeMillis()),
+                () -> append(id, NO_ACCOUNT, 0, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the sequence number of the new record
+     */
+    public synchronized long append(long senderAccountId, long receiverAccountId, long amount, long timestamp) {
+        if (!segment.hasRemaining()) {
+            roll();
+        }
+        long sequence = nextSequence++;
+        int position = segment.position();
+        segment.putLong(position + Long.BYTES, senderAccountId);
+        segment.putLong(position + 2 * Long.BYTES, receiverAccountId);
+        segment.putLong(position + 3 * Long.BYTES, amount);
+        segment.putLong(position + 4 * Long.BYTES, timestamp);
+        segment.putLong(position, sequence); //last, so a record cut by a crash reads as the end of the segment
+        segment.position(position + RECORD_SIZE);
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the last appended record, 0 if the journal is empty
+     */
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * @return the segments in sequence order; the last one is the segment being written
+     */
+    public List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted() //the first sequence is zero-padded, so names sort like numbers
+                    .toList();
+        }
+    }
+
+    public synchronized Path currentSegment() {
+        return segmentFile;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        segment.force();
+    }
+
+    /**
+     * Reads the records of a segment in order, stopping at the first empty slot.
+     */
+    public static void read(Path segmentFile, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (in.remaining() >= RECORD_SIZE) {
+                long sequence = in.getLong();
+                if (sequence == 0) {
+                    return;
+                }
+                consumer.accept(new JournalRecord(sequence, in.getLong(), in.getLong(), in.getLong(), in.getLong()));
+            }
+        }
+    }
+
+    /**
+     * Continues after the last record of the newest segment, or starts the journal at sequence 1.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            nextSequence = 1;
+            map(nextSequence);
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        long[] lastSequence = {firstSequence(last) - 1};
+        int[] records = {0};
+        read(last, r -> {
+            lastSequence[0] = r.sequence();
+            records[0]++;
+        });
+        nextSequence = lastSequence[0] + 1;
+        segmentFile = last;
+        segment = mapFile(last);
+        segment.position(records[0] * RECORD_SIZE);
+        log.info("Transfer journal continues at sequence {} in {}", nextSequence, last.toAbsolutePath());
+    }
+
+    private void roll() {
+        segment.force();
+        try {
+            map(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(long firstSequence) throws IOException {
+        segmentFile = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = mapFile(segmentFile);
+    }
+
+    private MappedByteBuffer mapFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        }
+    }
+
+    private static long firstSequence(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -3,8 +3,7 @@ package com.ro.model;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
-
-import java.math.BigDecimal;
+import org.springframework.data.annotation.Version;
 
 @Getter
 @Setter
@@ -13,5 +12,7 @@ public class Account {
     @Id //We annotate the attribute that model the primary key with the @Id annotation
     private long id;
     private String name;
-    private BigDecimal amount;
+    private Money amount;
+    @Version //incremented by every update of the row, see TransferMode.OPTIMISTIC
+    private Long version;
 }
@@ -0,0 +1,92 @@
+package com.ro.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.ro.converters.MoneyJsonDeserializer;
+import com.ro.converters.MoneyJsonSerializer;
+import com.ro.exceptions.AmountOutOfRangeException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money as a whole number of minor units (cents). The arithmetic works on the long value,
+ * so adding or comparing amounts doesn't create BigDecimal objects. In JSON it is written as a decimal
+ * number with two fraction digits (e.g. 1000.50).
+ */
+@JsonSerialize(using = MoneyJsonSerializer.class)
+@JsonDeserialize(using = MoneyJsonDeserializer.class)
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return new Money(minorUnits);
+    }
+
+    /**
+     * Rounds to cents (half even) if the amount has more than two fraction digits. For values read back
+     * from storage; amounts from clients go through ofExact().
+     */
+    public static Money of(BigDecimal amount) {
+        return new Money(amount.movePointRight(SCALE).setScale(0, RoundingMode.HALF_EVEN).longValueExact());
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more than two (non-zero) fraction digits, e.g. 0.005,
+     *                             or doesn't fit a long number of minor units
+     */
+    public static Money ofExact(BigDecimal amount) {
+        return new Money(amount.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * @throws AmountOutOfRangeException if the sum doesn't fit a long number of minor units
+     */
+    public Money plus(Money other) {
+        try {
+            return new Money(Math.addExact(minorUnits, other.minorUnits));
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeException();
+        }
+    }
+
+    /**
+     * @throws AmountOutOfRangeException if the difference doesn't fit a long number of minor units
+     */
+    public Money minus(Money other) {
+        try {
+            return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeException();
+        }
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    /**
+     * @return the amount as a decimal number with two fraction digits, e.g. -12.05
+     */
+    @Override
+    public String toString() {
+        long units = Math.abs(minorUnits / 100);
+        long cents = Math.abs(minorUnits % 100);
+        return (minorUnits < 0 ? "-" : "") + units + (cents < 10 ? ".0" : ".") + cents;
+    }
+}
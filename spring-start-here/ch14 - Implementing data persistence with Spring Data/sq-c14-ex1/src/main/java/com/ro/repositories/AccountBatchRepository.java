@@ -0,0 +1,17 @@
+package com.ro.repositories;
+
+import com.ro.model.Account;
+
+import java.util.Collection;
+
+/**
+ * Custom fragment of AccountRepository for the operations Spring Data JDBC can't derive from a query.
+ * Spring Data finds the implementation by the Impl postfix (AccountBatchRepositoryImpl).
+ */
+public interface AccountBatchRepository {
+
+    /**
+     * Writes the amount of every given account using JDBC batch updates.
+     */
+    void changeAmounts(Collection<Account> accounts);
+}
@@ -0,0 +1,29 @@
+package com.ro.repositories;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Custom fragment of AccountRepository for reading the account table without loading it in memory.
+ * Spring Data finds the implementation by the Impl postfix (AccountStreamRepositoryImpl).
+ */
+public interface AccountStreamRepository {
+
+    /**
+     * Passes the accounts to the consumer in id order, one at a time, while the rows are read.
+     */
+    void forEachAccount(Consumer<Account> consumer);
+
+    /**
+     * Like forEachAccount(), but only reads the id and the name, without mapping whole accounts.
+     */
+    void forEachAccountName(BiConsumer<Long, String> consumer);
+
+    /**
+     * Like forEachAccount(), but only reads the id and the balance, without mapping whole accounts.
+     */
+    void forEachAccountAmount(BiConsumer<Long, Money> consumer);
+}
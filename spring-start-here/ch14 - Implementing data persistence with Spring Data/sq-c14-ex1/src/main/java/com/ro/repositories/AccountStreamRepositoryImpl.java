@@ -0,0 +1,76 @@
+package com.ro.repositories;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jdbc.core.convert.EntityRowMapper;
+import org.springframework.data.jdbc.core.convert.JdbcConverter;
+import org.springframework.data.relational.core.mapping.RelationalMappingContext;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reads the accounts through a forward-only, read-only cursor that fetches accounts.stream.fetch-size
+ * rows per round-trip. The rows are mapped by Spring Data's EntityRowMapper, so Money columns go
+ * through the same converters as findAll().
+ * <p>
+ * Whether the driver really streams depends on it: H2 needs LAZY_QUERY_EXECUTION=TRUE in the URL (see
+ * spring.datasource.url in application.yml), MySQL
+ * needs useCursorFetch=true, otherwise the driver reads the whole result before the first row is returned.
+ */
+public class AccountStreamRepositoryImpl implements AccountStreamRepository {
+
+    private final JdbcTemplate jdbc;
+    private final JdbcConverter converter;
+    private final EntityRowMapper<Account> rowMapper;
+
+    @Value("${accounts.stream.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    @SuppressWarnings("unchecked")
+    public AccountStreamRepositoryImpl(JdbcTemplate jdbc, RelationalMappingContext mappingContext, JdbcConverter converter) {
+        this.jdbc = jdbc;
+        this.converter = converter;
+        RelationalPersistentEntity<Account> entity =
+                (RelationalPersistentEntity<Account>) mappingContext.getRequiredPersistentEntity(Account.class);
+        this.rowMapper = new EntityRowMapper<>(entity, converter);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        jdbc.query(cursor("SELECT * FROM account ORDER BY id"), resultSet -> {
+            consumer.accept(rowMapper.mapRow(resultSet, resultSet.getRow()));
+        });
+    }
+
+    @Override
+    public void forEachAccountName(BiConsumer<Long, String> consumer) {
+        jdbc.query(cursor("SELECT id, name FROM account ORDER BY id"), resultSet -> {
+            consumer.accept(resultSet.getLong(1), resultSet.getString(2));
+        });
+    }
+
+    @Override
+    public void forEachAccountAmount(BiConsumer<Long, Money> consumer) {
+        TypeInformation<Money> money = TypeInformation.of(Money.class);
+        jdbc.query(cursor("SELECT id, amount FROM account ORDER BY id"), resultSet -> {
+            consumer.accept(resultSet.getLong(1), (Money) converter.readValue(resultSet.getObject(2), money));
+        });
+    }
+
+    private PreparedStatementCreator cursor(String sql) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        };
+    }
+}
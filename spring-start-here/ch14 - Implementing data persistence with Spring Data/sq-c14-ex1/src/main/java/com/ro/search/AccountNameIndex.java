@@ -0,0 +1,237 @@
+package com.ro.search;
+
+import com.ro.repositories.AccountRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the account names for the case-insensitive searches, built from the account table
+ * at startup and kept up to date by AccountNameIndexListener.
+ * <ul>
+ *     <li>The lower-case names are kept in a sorted map, so an exact or a prefix search is a range of the
+ *     map: O(log n) plus the number of matches.</li>
+ *     <li>Every name is also indexed by its trigrams (the substrings of 3 characters). A contains search
+ *     only checks the names of the least common trigram of the text. Texts shorter than 3 characters
+ *     have no trigram and are checked against every name.</li>
+ * </ul>
+ * A name no longer used by any account stays in the index with no ids until the next rebuild().
+ */
+@Slf4j
+@Component
+public class AccountNameIndex {
+
+    private final AccountRepository accountRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private TreeMap<String, NameEntry> entries = new TreeMap<>();
+    private List<NameEntry> entriesByOrdinal = new ArrayList<>();
+    private Map<Long, IntList> entriesByTrigram = new HashMap<>();
+    private Map<Long, NameEntry> entriesById = new HashMap<>();
+
+    public AccountNameIndex(AccountRepository accountRepository) {
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * Indexes the whole account table again, e.g. after it was written without going through Spring Data.
+     */
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            entries = new TreeMap<>();
+            entriesByOrdinal = new ArrayList<>();
+            entriesByTrigram = new HashMap<>();
+            entriesById = new HashMap<>();
+            accountRepository.forEachAccountName(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Indexed the names of {} accounts", entriesById.size());
+    }
+
+    public void put(long id, String name) {
+        lock.writeLock().lock();
+        try {
+            NameEntry current = entriesById.get(id);
+            if (current != null) {
+                if (current.name.equals(normalize(name))) {
+                    return;
+                }
+                current.remove(id);
+            }
+            add(id, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            NameEntry current = entriesById.remove(id);
+            if (current != null) {
+                current.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param match IGNORE_CASE, PREFIX or CONTAINS (EXACT searches go to the database)
+     * @return the ids of at most maxResults matching accounts; ordered by name, except for CONTAINS
+     */
+    public List<Long> search(String text, NameMatch match, int maxResults) {
+        String query = normalize(text);
+        List<Long> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            switch (match) {
+                case IGNORE_CASE -> {
+                    NameEntry entry = entries.get(query);
+                    if (entry != null) {
+                        entry.collect(ids, maxResults);
+                    }
+                }
+                case PREFIX -> {
+                    //every name starting with the prefix sorts between the prefix and prefix + the last char
+                    for (NameEntry entry : entries.subMap(query, true, query + Character.MAX_VALUE, false).values()) {
+                        if (!entry.collect(ids, maxResults)) {
+                            break;
+                        }
+                    }
+                }
+                case CONTAINS -> contains(query, ids, maxResults);
+                default -> throw new IllegalArgumentException("Not an indexed match: " + match);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    private void contains(String query, List<Long> ids, int maxResults) {
+        if (query.length() < 3) {
+            for (NameEntry entry : entries.values()) {
+                if (entry.name.contains(query) && !entry.collect(ids, maxResults)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        IntList candidates = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            IntList posting = entriesByTrigram.get(trigram(query, i));
+            if (posting == null) {
+                return; //no name has this trigram
+            }
+            if (candidates == null || posting.size < candidates.size) {
+                candidates = posting;
+            }
+        }
+        for (int i = 0; i < candidates.size; i++) {
+            NameEntry entry = entriesByOrdinal.get(candidates.values[i]);
+            if (entry.name.contains(query) && !entry.collect(ids, maxResults)) {
+                return;
+            }
+        }
+    }
+
+    private void add(long id, String name) {
+        String normalized = normalize(name);
+        NameEntry entry = entries.get(normalized);
+        if (entry == null) {
+            entry = new NameEntry(normalized, entriesByOrdinal.size());
+            entries.put(normalized, entry);
+            entriesByOrdinal.add(entry);
+            for (int i = 0; i + 3 <= normalized.length(); i++) {
+                entriesByTrigram.computeIfAbsent(trigram(normalized, i), t -> new IntList()).addIfLast(entry.ordinal);
+            }
+        }
+        entry.add(id);
+        entriesById.put(id, entry);
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    /**
+     * A distinct lower-case name and the ids of its accounts (usually one).
+     */
+    private static final class NameEntry {
+        private final String name;
+        private final int ordinal;
+        private long[] ids = new long[1];
+        private int size;
+
+        private NameEntry(String name, int ordinal) {
+            this.name = name;
+            this.ordinal = ordinal;
+        }
+
+        private void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return false if the result is full
+         */
+        private boolean collect(List<Long> result, int maxResults) {
+            for (int i = 0; i < size; i++) {
+                if (result.size() == maxResults) {
+                    return false;
+                }
+                result.add(ids[i]);
+            }
+            return result.size() < maxResults;
+        }
+    }
+
+    /**
+     * Growable int array holding the ordinals of the names that contain a trigram, in ordinal order.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return; //a trigram repeated further in the same name
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
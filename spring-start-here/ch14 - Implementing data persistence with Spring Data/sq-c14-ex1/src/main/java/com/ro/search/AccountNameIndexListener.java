@@ -0,0 +1,36 @@
+package com.ro.search;
+
+import com.ro.model.Account;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps AccountNameIndex in sync with the accounts inserted, updated or deleted through Spring Data
+ * (AccountRepository.save(), delete()...). Changes made with plain SQL need AccountNameIndex.rebuild().
+ * <p>
+ * The events are published inside the transaction of the change, so the index is only updated once it
+ * commits (right away without a transaction): a rolled back change leaves it as it was.
+ */
+@Component
+@RequiredArgsConstructor
+public class AccountNameIndexListener {
+
+    private final AccountNameIndex accountNameIndex;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountSaved(AfterSaveEvent<?> event) {
+        if (event.getEntity() instanceof Account account) {
+            accountNameIndex.put(account.getId(), account.getName());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountDeleted(AfterDeleteEvent<?> event) {
+        if (event.getType() == Account.class) {
+            accountNameIndex.remove((Long) event.getId().getValue());
+        }
+    }
+}
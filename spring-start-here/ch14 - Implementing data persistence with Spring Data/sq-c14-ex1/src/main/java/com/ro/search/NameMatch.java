@@ -0,0 +1,23 @@
+package com.ro.search;
+
+/**
+ * How GET /accounts?name=...&match=... compares the account names with the searched text.
+ */
+public enum NameMatch {
+    /**
+     * Same name, case-sensitive (served by the account_name index of the database).
+     */
+    EXACT,
+    /**
+     * Same name, ignoring the case.
+     */
+    IGNORE_CASE,
+    /**
+     * Names starting with the text, ignoring the case.
+     */
+    PREFIX,
+    /**
+     * Names containing the text, ignoring the case.
+     */
+    CONTAINS
+}
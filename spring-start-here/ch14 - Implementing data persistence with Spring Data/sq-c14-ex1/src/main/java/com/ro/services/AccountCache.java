@@ -0,0 +1,126 @@
+package com.ro.services;
+
+import com.ro.model.Account;
+import com.ro.repositories.AccountRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read-through cache in front of AccountRepository.findById() and findAccountsByName(). The caches are
+ * Caffeine caches configured by spring.cache.caffeine.spec (size and time bounds, statistics), so their
+ * hits, misses and evictions are published as the cache.* metrics.
+ * <ul>
+ *     <li>accounts: account id -> account (null for a missing id)</li>
+ *     <li>accountIdsByName: name -> ids of the accounts with that name</li>
+ * </ul>
+ * A search by name only keeps ids, and every account is loaded through the first cache, so an account is only
+ * ever cached by a load that an evict() waits for. A changed balance only evicts the entry of its account,
+ * while the name searches stay cached; a saved account (created or renamed) also evicts the search of its
+ * name, and a search skips the ids whose account has another name by now.
+ * <p>
+ * With datasource.replica.enabled=true the read-only transactions may read from a replica that lags behind,
+ * so what they read is not cached: the transfers read their balances from the cache.
+ */
+@Component
+public class AccountCache {
+
+    private final AccountRepository accountRepository;
+    private final Cache accounts;
+    private final Cache accountIdsByName;
+
+    @Value("${datasource.replica.enabled:false}")
+    private boolean replicaReads;
+
+    public AccountCache(AccountRepository accountRepository, CacheManager cacheManager) {
+        this.accountRepository = accountRepository;
+        this.accounts = cacheManager.getCache("accounts");
+        this.accountIdsByName = cacheManager.getCache("accountIdsByName");
+    }
+
+    public Optional<Account> findById(long id) {
+        if (isReplicaRead()) {
+            Cache.ValueWrapper cached = accounts.get(id);
+            return cached != null ? Optional.ofNullable((Account) cached.get()) : accountRepository.findById(id);
+        }
+        return Optional.ofNullable(accounts.get(id, () -> accountRepository.findById(id).orElse(null)));
+    }
+
+    public List<Account> findAccountsByName(String name) {
+        if (isReplicaRead() && accountIdsByName.get(name) == null) {
+            return accountRepository.findAccountsByName(name);
+        }
+        List<Long> ids = accountIdsByName.get(name, () -> accountRepository.findAccountsByName(name).stream()
+                .map(Account::getId)
+                .toList());
+
+        List<Account> result = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            findById(id).filter(account -> name.equals(account.getName())).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    private boolean isReplicaRead() {
+        return replicaReads && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * To be called by every write of an account. The entry is evicted right away, so the rest of the
+     * transaction can't read the old balance from the cache, and once more when the transaction ends,
+     * in case a concurrent reader cached the old balance again before the commit (or the rollback).
+     */
+    public void evict(long id) {
+        evict(accounts, id);
+    }
+
+    /**
+     * The transfers change the balances with UPDATE queries, so a save() of an account creates or renames it.
+     */
+    @EventListener
+    public void onAccountSaved(AfterSaveEvent<?> event) {
+        if (event.getEntity() instanceof Account account) {
+            evict(accounts, account.getId());
+            if (account.getName() != null) {
+                evict(accountIdsByName, account.getName());
+            }
+        }
+    }
+
+    @EventListener
+    public void onAccountDeleted(AfterDeleteEvent<?> event) {
+        if (event.getType() == Account.class) {
+            evict(accounts, event.getId().getValue());
+        }
+    }
+
+    private static void evict(Cache cache, Object key) {
+        cache.evict(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evict(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * For changes that aren't made account by account, e.g. rewriting the whole account table.
+     */
+    public void clear() {
+        accounts.clear();
+        accountIdsByName.clear();
+    }
+}
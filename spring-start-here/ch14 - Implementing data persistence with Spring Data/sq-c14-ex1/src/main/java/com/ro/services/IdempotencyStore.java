@@ -0,0 +1,208 @@
+package com.ro.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ro.exceptions.IdempotencyKeyReusedException;
+import com.ro.model.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the Idempotency-Key of the transfers, so that a client retrying a transfer (e.g. after a
+ * timeout) doesn't apply it twice.
+ * <p>
+ * The recent keys are kept in memory with the result of their transfer, in a Caffeine cache bounded by
+ * transfer.idempotency.max-keys and transfer.idempotency.retention: a retry is answered from there, without
+ * any query. The key of an applied transfer is also inserted in the transfer_key table, in the transaction
+ * of the transfer, so TransferService recognizes the retries the cache doesn't know about (older keys, keys
+ * seen by the application before a restart, or by another instance). The rows are deleted after the retention.
+ * <p>
+ * A key is stored with the SHA-256 hash of its transfer (sender, receiver, amount): a key sent again with
+ * another transfer is refused with IdempotencyKeyReusedException instead of being answered with the result
+ * of the first one.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration retention;
+    private final Cache<String, Attempt> results;
+    private final Counter duplicates;
+
+    public IdempotencyStore(JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${transfer.idempotency.max-keys:100000}") long maxKeys,
+                            @Value("${transfer.idempotency.retention:24h}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retention = retention;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, results, "transferIdempotencyKeys");
+        this.duplicates = Counter.builder("transfer.idempotency.duplicates")
+                .description("Transfers answered with the result of an earlier transfer with the same key")
+                .register(meterRegistry);
+    }
+
+    public static String requestHash(long idSender, long idReceiver, Money amount) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer request = ByteBuffer.allocate(3 * Long.BYTES)
+                    .putLong(idSender)
+                    .putLong(idReceiver)
+                    .putLong(amount.minorUnits());
+            return HexFormat.of().formatHex(digest.digest(request.array()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //every JVM has SHA-256
+        }
+    }
+
+    /**
+     * Starts the transfer, unless a transfer with the same key was already started: then the result of that
+     * one is returned (a retry sent while the first transfer is still running waits for it). A failed
+     * transfer is forgotten, so the client can retry it with the same key.
+     *
+     * @throws IdempotencyKeyReusedException if the key was started with another transfer
+     */
+    public CompletableFuture<Void> execute(String key, String requestHash, Supplier<CompletableFuture<Void>> transfer) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Attempt attempt = new Attempt(requestHash, result);
+        Attempt previous = results.asMap().putIfAbsent(key, attempt);
+        if (previous != null) {
+            if (!previous.requestHash().equals(requestHash)) {
+                throw new IdempotencyKeyReusedException();
+            }
+            duplicates.increment();
+            return previous.result();
+        }
+
+        CompletableFuture<Void> started;
+        try {
+            started = transfer.get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((ignored, e) -> {
+            if (e == null) {
+                result.complete(null);
+            } else {
+                results.asMap().remove(key, attempt);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records the key before its transfer is applied, in the transaction of the transfer (like the other
+     * methods below). The row stays locked until the commit, so a concurrent transfer with the same key
+     * (sent to another instance, or retried after the key left the cache) waits for it: it then finds the
+     * key recorded, or recorded it itself if the first transfer was rolled back.
+     *
+     * @return false if the key was already recorded for the same transfer, which must not be applied again
+     * @throws IdempotencyKeyReusedException if the key was recorded for another transfer
+     */
+    public boolean record(String key, String requestHash) {
+        if (checkRecorded(key, requestHash)) {
+            return false;
+        }
+        try {
+            insert(Map.of(key, requestHash));
+            return true;
+        } catch (DuplicateKeyException e) {
+            //inserted and committed by a concurrent transfer since the query above (H2 keeps the transaction usable)
+            checkRecorded(key, requestHash);
+            return false;
+        }
+    }
+
+    /**
+     * @return the recorded keys among the given ones, with the hashes of their transfers
+     */
+    public Map<String, String> findRecorded(Collection<String> keys) {
+        Map<String, String> recorded = new HashMap<>();
+        if (keys.isEmpty()) {
+            return recorded;
+        }
+        String placeholders = String.join(",", Collections.nCopies(keys.size(), "?"));
+        jdbcTemplate.query(
+                "SELECT idempotency_key, request_hash FROM transfer_key WHERE idempotency_key IN (" + placeholders + ")",
+                resultSet -> {
+                    recorded.put(resultSet.getString(1), resultSet.getString(2));
+                },
+                keys.toArray());
+        return recorded;
+    }
+
+    /**
+     * Records the keys of transfers already applied in the transaction.
+     *
+     * @throws DuplicateKeyException if a concurrent transfer recorded one of the keys meanwhile; the
+     *                               transaction must be rolled back and retried
+     */
+    public void recordAll(Map<String, String> requestHashes) {
+        insert(requestHashes);
+    }
+
+    private boolean checkRecorded(String key, String requestHash) {
+        String recordedHash = findRecorded(List.of(key)).get(key);
+        if (recordedHash == null) {
+            return false;
+        }
+        if (!recordedHash.equals(requestHash)) {
+            throw new IdempotencyKeyReusedException();
+        }
+        return true;
+    }
+
+    private void insert(Map<String, String> requestHashes) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate("INSERT INTO transfer_key(idempotency_key, request_hash, created_at) VALUES (?, ?, ?)",
+                requestHashes.entrySet(), requestHashes.size(),
+                (ps, entry) -> {
+                    ps.setString(1, entry.getKey());
+                    ps.setString(2, entry.getValue());
+                    ps.setTimestamp(3, now);
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.idempotency.purge-interval:3600000}")
+    public void purge() {
+        int deleted = jdbcTemplate.update("DELETE FROM transfer_key WHERE created_at < ?",
+                Timestamp.from(Instant.now().minus(retention)));
+        if (deleted > 0) {
+            log.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private record Attempt(String requestHash, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.ro.services;
+
+import com.ro.model.Money;
+
+/**
+ * Published by TransferService for every applied transfer. Listeners that only care about committed
+ * transfers should use @TransactionalEventListener.
+ */
+public record TransferCompletedEvent(long senderAccountId, long receiverAccountId, Money amount) {
+}
@@ -0,0 +1,211 @@
+package com.ro.services;
+
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.exceptions.AccountNotFoundException;
+import com.ro.exceptions.IdempotencyKeyReusedException;
+import com.ro.exceptions.InsufficientFundsException;
+import com.ro.exceptions.InvalidAmountException;
+import com.ro.exceptions.TransferQueueFullException;
+import com.ro.exceptions.TransferQueueStoppedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for transfers. Callers enqueue transfers into a bounded ring buffer (an ArrayBlockingQueue)
+ * and get a CompletableFuture back. A single writer thread drains whatever is pending, up to
+ * transfer.async.max-batch-size transfers, and applies them with one TransferService.transferMoneyBatch()
+ * call, i.e. one transaction and one commit for the whole group.
+ * <p>
+ * With a transfer.async.coalescing-window (ms) the writer doesn't apply the group as soon as the first
+ * transfer arrives but waits up to the window for more. Micro-transfers between the same accounts then
+ * end up in the same group, where transferMoneyBatch() nets them: every account is written once per group,
+ * whatever the number of transfers touching it. Each caller still gets its own result.
+ */
+@Slf4j
+@Service
+public class TransferQueue {
+
+    private final TransferService transferService;
+    private final BlockingQueue<PendingTransfer> queue;
+    private final int maxBatchSize;
+    private final long coalescingWindowNanos;
+    private final DistributionSummary batchSize;
+    private final DistributionSummary batchAccounts;
+    private final Counter rejected;
+    private final boolean enabled;
+    private Thread writer;
+    private volatile boolean stopping;
+
+    public TransferQueue(TransferService transferService,
+                         MeterRegistry meterRegistry,
+                         @Value("${transfer.async.enabled:false}") boolean enabled,
+                         @Value("${transfer.async.capacity:10000}") int capacity,
+                         @Value("${transfer.async.max-batch-size:500}") int maxBatchSize,
+                         @Value("${transfer.async.coalescing-window:0}") long coalescingWindowMillis) {
+        this.transferService = transferService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.enabled = enabled;
+        this.coalescingWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalescingWindowMillis);
+
+        Gauge.builder("transfer.queue.depth", queue, BlockingQueue::size)
+                .description("Transfers waiting for the writer thread")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("transfer.queue.batch.size")
+                .description("Transfers applied per transaction")
+                .register(meterRegistry);
+        this.batchAccounts = DistributionSummary.builder("transfer.queue.batch.accounts")
+                .description("Account rows written per transaction")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("transfer.queue.rejected")
+                .description("Transfers rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws TransferQueueFullException    if the queue is full; the caller should retry later
+     * @throws TransferQueueStoppedException if the queue is stopping, so the transfer would never be applied
+     */
+    public CompletableFuture<Void> submit(TransferRequest request) {
+        if (stopping) {
+            throw new TransferQueueStoppedException();
+        }
+        PendingTransfer pending = new PendingTransfer(request, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            rejected.increment();
+            throw new TransferQueueFullException();
+        }
+        if (stopping && queue.remove(pending)) {
+            //the writer may have drained the queue for the last time already; if the transfer is not in it
+            //any more, the writer took it and applies it
+            throw new TransferQueueStoppedException();
+        }
+        return pending.result();
+    }
+
+    /**
+     * The writer thread only runs with transfer.async.enabled; otherwise nothing is ever submitted.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        writer = new Thread(this::drain, "transfer-queue-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Refuses new transfers, then lets the writer apply the ones already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        writer.join();
+    }
+
+    private void drain() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take()); //wait for the first transfer, then take whatever else is already pending
+                queue.drainTo(batch, maxBatchSize - 1);
+                coalesce(batch);
+                apply(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //shutting down: apply what was accepted so far, including a group interrupted while coalescing
+        while (!batch.isEmpty() || queue.drainTo(batch, maxBatchSize) > 0) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Keeps adding transfers to the batch until the coalescing window, counted from now, is over
+     * or the batch is full.
+     */
+    private void coalesce(List<PendingTransfer> batch) throws InterruptedException {
+        if (coalescingWindowNanos == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + coalescingWindowNanos;
+        while (batch.size() < maxBatchSize) {
+            PendingTransfer next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void apply(List<PendingTransfer> batch) {
+        batchSize.record(batch.size());
+
+        List<TransferRequest> requests = new ArrayList<>(batch.size());
+        for (PendingTransfer pending : batch) {
+            requests.add(pending.request());
+        }
+
+        List<TransferResult> results;
+        try {
+            results = transferService.transferMoneyBatch(requests);
+        } catch (RuntimeException e) {
+            log.error("Could not apply a batch of {} transfers", batch.size(), e);
+            for (PendingTransfer pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        Set<Long> writtenAccounts = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<Void> result = batch.get(i).result();
+            TransferResult transferResult = results.get(i);
+            switch (transferResult.getStatus()) {
+                case COMPLETED -> {
+                    writtenAccounts.add(transferResult.getSenderAccountId());
+                    writtenAccounts.add(transferResult.getReceiverAccountId());
+                    result.complete(null);
+                }
+                case ALREADY_APPLIED -> result.complete(null); //no row written for it
+                case ACCOUNT_NOT_FOUND -> result.completeExceptionally(new AccountNotFoundException());
+                case INSUFFICIENT_FUNDS -> result.completeExceptionally(new InsufficientFundsException());
+                case INVALID_AMOUNT -> result.completeExceptionally(new InvalidAmountException());
+                case IDEMPOTENCY_KEY_REUSED -> result.completeExceptionally(new IdempotencyKeyReusedException());
+            }
+        }
+        batchAccounts.record(writtenAccounts.size());
+    }
+
+    private record PendingTransfer(TransferRequest request, CompletableFuture<Void> result) {
+    }
+}
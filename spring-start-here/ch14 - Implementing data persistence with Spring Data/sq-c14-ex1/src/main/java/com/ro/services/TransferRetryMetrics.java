@@ -0,0 +1,64 @@
+package com.ro.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of the transfer retries:
+ * <ul>
+ *     <li>transfer.attempts: attempts per transferMoney() call (its count is the number of transfers)</li>
+ *     <li>transfer.optimistic.conflicts: attempts that failed the version check; divided by the total of
+ *     transfer.attempts it gives the conflict rate</li>
+ *     <li>transfer.optimistic.retries: attempts run again after a conflict</li>
+ *     <li>transfer.optimistic.exhausted: transfers that still conflicted on the last attempt</li>
+ * </ul>
+ */
+@Component("transferRetryMetrics")
+public class TransferRetryMetrics implements RetryListener {
+
+    private final DistributionSummary attempts;
+    private final Counter conflicts;
+    private final Counter retries;
+    private final Counter exhausted;
+
+    public TransferRetryMetrics(MeterRegistry meterRegistry) {
+        this.attempts = DistributionSummary.builder("transfer.attempts")
+                .description("Attempts per transfer")
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("transfer.optimistic.conflicts")
+                .description("Transfer attempts that found an account changed by another transaction")
+                .register(meterRegistry);
+        this.retries = Counter.builder("transfer.optimistic.retries")
+                .description("Transfer attempts run again after a conflict")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("transfer.optimistic.exhausted")
+                .description("Transfers given up after too many conflicts")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+        if (throwable instanceof OptimisticLockingFailureException) {
+            conflicts.increment();
+        }
+    }
+
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+        //the retry count is the number of failed attempts
+        int attemptCount = throwable == null ? context.getRetryCount() + 1 : context.getRetryCount();
+        attempts.record(attemptCount);
+        if (attemptCount > 1) {
+            retries.increment(attemptCount - 1);
+        }
+        if (throwable instanceof OptimisticLockingFailureException) {
+            exhausted.increment();
+        }
+    }
+}
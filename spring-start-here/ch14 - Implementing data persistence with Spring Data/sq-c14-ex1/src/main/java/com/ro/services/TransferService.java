@@ -1,37 +1,364 @@
 package com.ro.services;
 
+import com.ro.dto.AccountPage;
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.dto.TransferStatus;
 import com.ro.exceptions.AccountNotFoundException;
+import com.ro.exceptions.InsufficientFundsException;
+import com.ro.exceptions.InvalidAmountException;
 import com.ro.model.Account;
+import com.ro.model.Money;
 import com.ro.repositories.AccountRepository;
+import com.ro.search.AccountNameIndex;
+import com.ro.search.NameMatch;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class TransferService {
     private final AccountRepository accountRepository;
+    private final AccountCache accountCache;
+    private final AccountNameIndex accountNameIndex;
+    private final IdempotencyStore idempotencyStore;
+    private final ApplicationEventPublisher eventPublisher;
 
+    @Value("${transfer.mode:CLASSIC}")
+    private TransferMode transferMode = TransferMode.CLASSIC;
+
+    @Value("${accounts.search.max-results:1000}")
+    private int maxSearchResults = 1000;
+
+    /**
+     * A transfer that lost an optimistic locking race (TransferMode.OPTIMISTIC) is rolled back and run again
+     * after a random (jittered) exponential backoff, up to transfer.optimistic.max-attempts times. The retry
+     * advice wraps the transaction, so every attempt reads the accounts in a new transaction.
+     */
+    @Retryable(retryFor = OptimisticLockingFailureException.class,
+            maxAttemptsExpression = "${transfer.optimistic.max-attempts:5}",
+            backoff = @Backoff(
+                    delayExpression = "${transfer.optimistic.backoff-delay:5}",
+                    maxDelayExpression = "${transfer.optimistic.backoff-max-delay:100}",
+                    multiplier = 2,
+                    random = true),
+            listeners = "transferRetryMetrics")
+    @Transactional
+    public void transferMoney(long idSender, long idReceiver, Money amount) {
+        applyTransfer(idSender, idReceiver, amount);
+    }
+
+    /**
+     * transferMoney() for a transfer sent with an Idempotency-Key. The key is recorded in the transaction of
+     * the transfer; if it was already recorded, the transfer was applied before and is not applied again.
+     *
+     * @throws com.ro.exceptions.IdempotencyKeyReusedException if the key was recorded for another transfer
+     */
+    @Retryable(retryFor = OptimisticLockingFailureException.class,
+            maxAttemptsExpression = "${transfer.optimistic.max-attempts:5}",
+            backoff = @Backoff(
+                    delayExpression = "${transfer.optimistic.backoff-delay:5}",
+                    maxDelayExpression = "${transfer.optimistic.backoff-max-delay:100}",
+                    multiplier = 2,
+                    random = true),
+            listeners = "transferRetryMetrics")
     @Transactional
-    public void transferMoney(long idSender, long idReceiver, BigDecimal amount) {
-        Account sender = accountRepository.findById(idSender).orElseThrow(AccountNotFoundException::new);
-        Account receiver = accountRepository.findById(idReceiver).orElseThrow(AccountNotFoundException::new);
+    public void transferMoney(long idSender, long idReceiver, Money amount, String idempotencyKey) {
+        if (idempotencyStore.record(idempotencyKey, IdempotencyStore.requestHash(idSender, idReceiver, amount))) {
+            applyTransfer(idSender, idReceiver, amount);
+        }
+    }
 
-        BigDecimal senderNewAmount = sender.getAmount().subtract(amount);
-        BigDecimal receiverNewAmount = receiver.getAmount().add(amount);
+    private void applyTransfer(long idSender, long idReceiver, Money amount) {
+        if (!isValidAmount(amount)) {
+            throw new InvalidAmountException();
+        }
+        if (transferMode == TransferMode.ATOMIC) {
+            transferMoneyAtomic(idSender, idReceiver, amount);
+            eventPublisher.publishEvent(new TransferCompletedEvent(idSender, idReceiver, amount));
+            return;
+        }
+        if (transferMode == TransferMode.OPTIMISTIC) {
+            transferMoneyOptimistic(idSender, idReceiver, amount);
+            eventPublisher.publishEvent(new TransferCompletedEvent(idSender, idReceiver, amount));
+            return;
+        }
+
+        Account sender = accountCache.findById(idSender).orElseThrow(AccountNotFoundException::new);
+        Account receiver = accountCache.findById(idReceiver).orElseThrow(AccountNotFoundException::new);
+
+        Money senderNewAmount = sender.getAmount().minus(amount);
+        Money receiverNewAmount = receiver.getAmount().plus(amount);
 
         accountRepository.changeAmount(idSender, senderNewAmount);
+        accountCache.evict(idSender);
         accountRepository.changeAmount(idReceiver, receiverNewAmount);
+        accountCache.evict(idReceiver);
+        eventPublisher.publishEvent(new TransferCompletedEvent(idSender, idReceiver, amount));
+    }
+
+    /**
+     * One round-trip on the happy path. The accounts are only read again when the update did not touch
+     * the expected rows, to tell a missing account apart from insufficient funds. Throwing rolls back
+     * the partial update (e.g. the receiver was credited but the sender was not debited).
+     */
+    private void transferMoneyAtomic(long idSender, long idReceiver, Money amount) {
+        int expectedRows = idSender == idReceiver ? 1 : 2;
+        int updatedRows = accountRepository.transferAmount(idSender, idReceiver, amount);
+        accountCache.evict(idSender);
+        accountCache.evict(idReceiver);
+
+        if (updatedRows != expectedRows) {
+            if (!accountRepository.existsById(idSender) || !accountRepository.existsById(idReceiver)) {
+                throw new AccountNotFoundException();
+            }
+            throw new InsufficientFundsException();
+        }
+    }
+
+    /**
+     * No locks are taken while reading. Each balance is written with a version check, in id order so that
+     * two transfers between the same accounts wait for each other instead of deadlocking. A failed check
+     * means another transaction changed the account after it was read: the exception rolls back this
+     * attempt and the @Retryable advice runs it again with fresh balances.
+     */
+    private void transferMoneyOptimistic(long idSender, long idReceiver, Money amount) {
+        Account sender = accountCache.findById(idSender).orElseThrow(AccountNotFoundException::new);
+        Account receiver = accountCache.findById(idReceiver).orElseThrow(AccountNotFoundException::new);
+        if (idSender == idReceiver) {
+            return;
+        }
+
+        Money senderNewAmount = sender.getAmount().minus(amount);
+        Money receiverNewAmount = receiver.getAmount().plus(amount);
+
+        if (idSender < idReceiver) {
+            changeAmountIfVersion(sender, senderNewAmount);
+            changeAmountIfVersion(receiver, receiverNewAmount);
+        } else {
+            changeAmountIfVersion(receiver, receiverNewAmount);
+            changeAmountIfVersion(sender, senderNewAmount);
+        }
+    }
+
+    private void changeAmountIfVersion(Account account, Money newAmount) {
+        int updatedRows = accountRepository.changeAmountIfVersion(account.getId(), newAmount, account.getVersion());
+        accountCache.evict(account.getId()); //on a conflict the cached account is the stale one
+        if (updatedRows == 0) {
+            throw new OptimisticLockingFailureException("Account " + account.getId() + " was changed by another transaction");
+        }
+    }
+
+    /**
+     * Applies all the transfers in one transaction: one query reads and locks every involved account,
+     * the transfers are applied in memory in the given order and the changed balances are written back
+     * with a JDBC batch. A transfer that can't be applied doesn't stop the others; its status says why.
+     * A transfer whose amount is not positive is refused before any account is locked.
+     * A transfer whose idempotency key was already recorded is reported as completed without applying it
+     * (or refused, if the key was recorded for another transfer). When a concurrent transaction records one
+     * of the keys first, the batch is rolled back and run again, and then finds that key recorded.
+     */
+    @Retryable(retryFor = DuplicateKeyException.class, maxAttempts = 3)
+    @Transactional
+    public List<TransferResult> transferMoneyBatch(List<TransferRequest> requests) {
+        List<TransferRequest> validRequests = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            if (isValidAmount(request.getAmount())) {
+                validRequests.add(request);
+            }
+        }
+        Map<Long, Account> accounts = lockAccounts(validRequests);
+
+        List<String> keys = new ArrayList<>();
+        for (TransferRequest request : requests) {
+            if (request.getIdempotencyKey() != null) {
+                keys.add(request.getIdempotencyKey());
+            }
+        }
+        Map<String, String> recordedKeys = idempotencyStore.findRecorded(keys);
+        Map<String, String> newKeys = new HashMap<>();
+
+        Map<Long, Account> changedAccounts = new TreeMap<>(); //sorted by id, like the locks
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            Account sender = accounts.get(request.getSenderAccountId());
+            Account receiver = accounts.get(request.getReceiverAccountId());
+
+            TransferStatus status;
+            String key = request.getIdempotencyKey();
+            String requestHash = key != null && isValidAmount(request.getAmount())
+                    ? IdempotencyStore.requestHash(request.getSenderAccountId(), request.getReceiverAccountId(), request.getAmount())
+                    : null;
+            if (!isValidAmount(request.getAmount())) {
+                status = TransferStatus.INVALID_AMOUNT;
+            } else if (key != null && recordedKeys.containsKey(key)) {
+                status = recordedKeys.get(key).equals(requestHash)
+                        ? TransferStatus.ALREADY_APPLIED
+                        : TransferStatus.IDEMPOTENCY_KEY_REUSED;
+            } else if (sender == null || receiver == null) {
+                status = TransferStatus.ACCOUNT_NOT_FOUND;
+            } else if (sender.getAmount().isLessThan(request.getAmount())) {
+                status = TransferStatus.INSUFFICIENT_FUNDS;
+            } else {
+                sender.setAmount(sender.getAmount().minus(request.getAmount()));
+                receiver.setAmount(receiver.getAmount().plus(request.getAmount()));
+                changedAccounts.put(sender.getId(), sender);
+                changedAccounts.put(receiver.getId(), receiver);
+                eventPublisher.publishEvent(new TransferCompletedEvent(sender.getId(), receiver.getId(), request.getAmount()));
+                status = TransferStatus.COMPLETED;
+                if (key != null) {
+                    recordedKeys.put(key, requestHash);
+                    newKeys.put(key, requestHash);
+                }
+            }
+
+            results.add(new TransferResult(
+                    request.getSenderAccountId(),
+                    request.getReceiverAccountId(),
+                    request.getAmount(),
+                    status));
+        }
+
+        if (!changedAccounts.isEmpty()) {
+            accountRepository.changeAmounts(changedAccounts.values());
+            changedAccounts.keySet().forEach(accountCache::evict);
+        }
+        if (!newKeys.isEmpty()) {
+            idempotencyStore.recordAll(newKeys);
+        }
+        return results;
+    }
+
+    /**
+     * Applies the legs of a split payment (e.g. buyer -> seller, seller -> fees, seller -> tax) as one
+     * transfer: either all of them or none. All the accounts are locked at once in id order, so two
+     * chains over the same accounts can't deadlock whatever the order of their legs. The legs are then
+     * checked and applied in memory in the given order (a leg can spend what an earlier leg credited),
+     * and the changed balances are written with one batch update.
+     *
+     * @throws InvalidAmountException     if the amount of any leg is not positive; no account is locked
+     * @throws AccountNotFoundException   if an account of any leg doesn't exist; nothing is changed
+     * @throws InsufficientFundsException if the sender of any leg can't cover it; nothing is changed
+     */
+    @Transactional
+    public void transferChain(List<TransferRequest> legs) {
+        for (TransferRequest leg : legs) {
+            if (!isValidAmount(leg.getAmount())) {
+                throw new InvalidAmountException();
+            }
+        }
+        Map<Long, Account> accounts = lockAccounts(legs);
+
+        for (TransferRequest leg : legs) {
+            Account sender = accounts.get(leg.getSenderAccountId());
+            Account receiver = accounts.get(leg.getReceiverAccountId());
+            if (sender == null || receiver == null) {
+                throw new AccountNotFoundException();
+            }
+            if (sender.getAmount().isLessThan(leg.getAmount())) {
+                throw new InsufficientFundsException();
+            }
+            sender.setAmount(sender.getAmount().minus(leg.getAmount()));
+            receiver.setAmount(receiver.getAmount().plus(leg.getAmount()));
+        }
+
+        if (!accounts.isEmpty()) {
+            accountRepository.changeAmounts(new TreeMap<>(accounts).values()); //in id order, like the locks
+            accounts.keySet().forEach(accountCache::evict);
+        }
+        for (TransferRequest leg : legs) {
+            eventPublisher.publishEvent(new TransferCompletedEvent(
+                    leg.getSenderAccountId(), leg.getReceiverAccountId(), leg.getAmount()));
+        }
+    }
+
+    /**
+     * A transfer moves a positive amount from the sender to the receiver; a negative one would take money
+     * from the receiver without any balance check.
+     */
+    public static boolean isValidAmount(Money amount) {
+        return amount != null && amount.isPositive();
     }
 
+    /**
+     * Reads and locks (until the end of the transaction) every account used by the transfers.
+     */
+    private Map<Long, Account> lockAccounts(List<TransferRequest> transfers) {
+        Set<Long> ids = new HashSet<>();
+        for (TransferRequest transfer : transfers) {
+            ids.add(transfer.getSenderAccountId());
+            ids.add(transfer.getReceiverAccountId());
+        }
+
+        Map<Long, Account> accounts = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Account account : accountRepository.findAccountsForUpdate(ids)) {
+                accounts.put(account.getId(), account);
+            }
+        }
+        return accounts;
+    }
+
+    @Transactional(readOnly = true)
     public Iterable<Account> getAllAccounts() {
         return accountRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
+    public AccountPage getAccountsPage(long afterId, int limit) {
+        List<Account> accounts = accountRepository.findAccountsAfter(afterId, limit);
+        Long nextAfter = accounts.size() < limit ? null : accounts.get(accounts.size() - 1).getId();
+        return new AccountPage(accounts, nextAfter);
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachAccount(Consumer<Account> consumer) {
+        accountRepository.forEachAccount(consumer);
+    }
+
+    @Transactional(readOnly = true)
     public List<Account> findAccountsByName(String name) {
-        return accountRepository.findAccountsByName(name);
+        return accountCache.findAccountsByName(name);
+    }
+
+    /**
+     * EXACT searches use the name index of the database (through the cache); the other matches look up
+     * the ids in AccountNameIndex and read the accounts by primary key.
+     */
+    @Transactional(readOnly = true)
+    public List<Account> findAccountsByName(String name, NameMatch match) {
+        if (match == NameMatch.EXACT) {
+            return findAccountsByName(name);
+        }
+        List<Long> ids = accountNameIndex.search(name, match, maxSearchResults);
+        Map<Long, Account> accounts = new HashMap<>();
+        for (Account account : accountRepository.findAllById(ids)) {
+            accounts.put(account.getId(), account);
+        }
+
+        List<Account> result = new ArrayList<>(ids.size());
+        for (Long id : ids) { //in the order of the index
+            Account account = accounts.get(id);
+            if (account != null) {
+                result.add(account);
+            }
+        }
+        return result;
     }
 }
@@ -0,0 +1,161 @@
+package com.ro.stats;
+
+import com.ro.dto.AccountStatistics;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Balance statistics of all the accounts (GET /accounts/stats), updated change by change instead of
+ * scanning the account table:
+ * <ul>
+ *     <li>the count and the total are LongAdders, striped so that concurrent transfers don't contend;</li>
+ *     <li>balances keeps the balance of every account, to know which histogram bucket an account leaves when
+ *     its balance changes; the buckets are LongAdders too, found by a binary search of the bounds
+ *     (accounts.stats.histogram-bounds);</li>
+ *     <li>balanceCounts counts the accounts per balance, sorted, for the min and the max.</li>
+ * </ul>
+ * Transfers are applied as deltas when they commit (see AccountStatsListener), so the order in which the
+ * commits are seen doesn't matter. Changes made with plain SQL need rebuild(). The figures of a snapshot are
+ * read one after the other, so while transfers commit they may be from slightly different moments.
+ */
+@Slf4j
+@Component
+public class AccountStats {
+
+    private final AccountRepository accountRepository;
+    private final long[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final Map<Long, Long> balances = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Integer> balanceCounts = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(); //the write lock is only taken by rebuild()
+
+    public AccountStats(AccountRepository accountRepository,
+                        @Value("${accounts.stats.histogram-bounds:0,100,1000,10000,100000,1000000}") BigDecimal[] histogramBounds) {
+        this.accountRepository = accountRepository;
+        this.bounds = Arrays.stream(histogramBounds)
+                .mapToLong(bound -> Money.of(bound).minorUnits())
+                .sorted()
+                .distinct()
+                .toArray();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Reads the whole account table again, e.g. after it was written without going through Spring Data.
+     */
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            balances.clear();
+            balanceCounts.clear();
+            count.reset();
+            total.reset();
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            accountRepository.forEachAccountAmount(this::set);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Computed the balance statistics of {} accounts", count.sum());
+    }
+
+    /**
+     * A new account, or a balance set to a new value.
+     */
+    public void set(long id, Money amount) {
+        update(() -> balances.compute(id, (key, old) -> move(old, amount.minorUnits())));
+    }
+
+    /**
+     * A balance changed by delta, e.g. by a transfer. Ignored for an account that isn't known.
+     */
+    public void add(long id, Money delta) {
+        update(() -> balances.computeIfPresent(id, (key, old) -> move(old, Math.addExact(old, delta.minorUnits()))));
+    }
+
+    public void remove(long id) {
+        update(() -> balances.computeIfPresent(id, (key, old) -> move(old, null)));
+    }
+
+    public AccountStatistics snapshot() {
+        List<AccountStatistics.Bucket> histogram = new ArrayList<>(buckets.length);
+        for (int i = 0; i < buckets.length; i++) {
+            histogram.add(new AccountStatistics.Bucket(
+                    i == 0 ? null : Money.ofMinorUnits(bounds[i - 1]),
+                    i == bounds.length ? null : Money.ofMinorUnits(bounds[i]),
+                    buckets[i].sum()));
+        }
+        Map.Entry<Long, Integer> min = balanceCounts.firstEntry();
+        Map.Entry<Long, Integer> max = balanceCounts.lastEntry();
+        return new AccountStatistics(
+                count.sum(),
+                Money.ofMinorUnits(total.sum()),
+                min == null ? null : Money.ofMinorUnits(min.getKey()),
+                max == null ? null : Money.ofMinorUnits(max.getKey()),
+                histogram);
+    }
+
+    private void update(Runnable change) {
+        lock.readLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves an account from its old balance to the new one (null: no account). Called by the
+     * ConcurrentHashMap while it holds the entry of the account, so the changes of one account are applied
+     * one at a time.
+     *
+     * @return the new balance
+     */
+    private Long move(Long oldBalance, Long newBalance) {
+        if (oldBalance != null) {
+            total.add(-oldBalance);
+            buckets[bucket(oldBalance)].decrement();
+            balanceCounts.compute(oldBalance, (balance, accounts) -> accounts == null || accounts == 1 ? null : accounts - 1);
+        } else {
+            count.increment();
+        }
+        if (newBalance != null) {
+            total.add(newBalance);
+            buckets[bucket(newBalance)].increment();
+            balanceCounts.compute(newBalance, (balance, accounts) -> accounts == null ? 1 : accounts + 1);
+        } else {
+            count.decrement();
+        }
+        return newBalance;
+    }
+
+    /**
+     * The number of bounds that are <= balance.
+     */
+    private int bucket(long balance) {
+        int index = Arrays.binarySearch(bounds, balance);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ro.stats;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.services.TransferCompletedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps AccountStats in sync with the committed transfers and with the accounts inserted, updated or deleted
+ * through Spring Data. Changes made with plain SQL need AccountStats.rebuild().
+ * <p>
+ * The transfers are applied as they were meant: in the CLASSIC transfer mode concurrent transfers can lose
+ * updates in the database, and then the statistics and the table differ until the next rebuild().
+ * <p>
+ * The saves and deletes are published inside their transaction, so they are applied once it commits (right
+ * away without a transaction), like the transfers: a rolled back change leaves the statistics as they were.
+ */
+@Component
+@RequiredArgsConstructor
+public class AccountStatsListener {
+
+    private final AccountStats accountStats;
+
+    @TransactionalEventListener
+    public void onTransferCompleted(TransferCompletedEvent event) {
+        accountStats.add(event.senderAccountId(), Money.ZERO.minus(event.amount()));
+        accountStats.add(event.receiverAccountId(), event.amount());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountSaved(AfterSaveEvent<?> event) {
+        if (event.getEntity() instanceof Account account) {
+            accountStats.set(account.getId(), account.getAmount());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountDeleted(AfterDeleteEvent<?> event) {
+        if (event.getType() == Account.class) {
+            accountStats.remove((Long) event.getId().getValue());
+        }
+    }
+}
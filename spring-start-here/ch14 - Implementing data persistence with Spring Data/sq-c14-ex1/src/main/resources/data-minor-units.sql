@@ -0,0 +1,2 @@
+INSERT INTO account(name, amount) VALUES ('Jane Down', 100000);
+INSERT INTO account(name, amount) VALUES ('John Read', 100000);
@@ -0,0 +1,20 @@
+create table account (
+  id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  name VARCHAR(50) NOT NULL,
+  amount BIGINT NOT NULL, -- minor units (cents)
+  version BIGINT NOT NULL DEFAULT 0
+);
+
+create index account_name on account(name);
+
+create table transfer_key (
+  idempotency_key VARCHAR(64) NOT NULL PRIMARY KEY,
+  request_hash CHAR(64) NOT NULL,
+  created_at TIMESTAMP NOT NULL
+);
+
+-- written on the primary by ReplicaLagMonitor and read back on the replica, see datasource.replica
+create table replication_heartbeat (
+  id INT NOT NULL PRIMARY KEY,
+  beat_millis BIGINT NOT NULL
+);
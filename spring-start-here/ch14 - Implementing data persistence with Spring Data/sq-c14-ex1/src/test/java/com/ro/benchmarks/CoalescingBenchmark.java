@@ -0,0 +1,118 @@
+package com.ro.benchmarks;
+
+import com.ro.Application;
+import com.ro.dto.TransferRequest;
+import com.ro.model.Money;
+import com.ro.services.TransferQueue;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sends micro-transfers between a few pairs of accounts through the TransferQueue, with and without a
+ * coalescing window. It is a plain main class (not picked up by surefire); run it from the IDE or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ro.benchmarks.CoalescingBenchmark}.
+ * <p>
+ * Every client thread waits for the acknowledgement of a transfer before sending the next one, like an
+ * HTTP client would. The account rows written per transfer show how much netting the window gives.
+ */
+public class CoalescingBenchmark {
+
+    private static final int PAIRS = 4;
+    private static final int TRANSFERS = 20_000;
+    private static final int[] THREADS = {8, 64};
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : THREADS) {
+            for (int window : new int[]{0, 1, 5}) {
+                run(threads, window);
+            }
+        }
+    }
+
+    private static void run(int threads, int window) throws Exception {
+        try (ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                "--transfer.async.enabled=true",
+                "--transfer.async.coalescing-window=" + window,
+                "--spring.main.web-application-type=none", "--logging.level.root=WARN")) {
+            TransferQueue transferQueue = context.getBean(TransferQueue.class);
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+            jdbc.update("DELETE FROM account");
+            for (int i = 0; i < PAIRS * 2; i++) {
+                jdbc.update("INSERT INTO account(name, amount) VALUES (?, ?)", "Wallet " + i, 1_000_000);
+            }
+            List<Long> ids = jdbc.queryForList("SELECT id FROM account ORDER BY id", Long.class);
+
+            transfer(transferQueue, ids, threads, TRANSFERS / 4); //warm-up
+            DistributionSummary batchSize = meterRegistry.get("transfer.queue.batch.size").summary();
+            DistributionSummary batchAccounts = meterRegistry.get("transfer.queue.batch.accounts").summary();
+            long transfersBefore = (long) batchSize.totalAmount();
+            long rowsBefore = (long) batchAccounts.totalAmount();
+            long batchesBefore = batchSize.count();
+
+            long start = System.nanoTime();
+            transfer(transferQueue, ids, threads, TRANSFERS);
+            long elapsed = System.nanoTime() - start;
+
+            long transfers = (long) batchSize.totalAmount() - transfersBefore;
+            long rows = (long) batchAccounts.totalAmount() - rowsBefore;
+            long batches = batchSize.count() - batchesBefore;
+            BigDecimal total = jdbc.queryForObject("SELECT SUM(amount) FROM account", BigDecimal.class);
+
+            System.out.printf("%2d threads  window %d ms  %,8.0f transfers/s  %6.1f transfers/group  %5.3f rows written/transfer  total balance %s%n",
+                    threads,
+                    window,
+                    TRANSFERS / (elapsed / 1_000_000_000.0),
+                    transfers / (double) batches,
+                    rows / (double) transfers,
+                    total.toPlainString());
+        }
+    }
+
+    /**
+     * Every thread sends transfers back and forth between the two accounts of one of the pairs.
+     */
+    private static void transfer(TransferQueue transferQueue, List<Long> ids, int threads, int transfers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long a = ids.get((t % PAIRS) * 2);
+                long b = ids.get((t % PAIRS) * 2 + 1);
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < transfers / threads; i++) {
+                        CompletableFuture<Void> result = i % 2 == 0
+                                ? transferQueue.submit(request(a, b))
+                                : transferQueue.submit(request(b, a));
+                        result.join();
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static TransferRequest request(long idSender, long idReceiver) {
+        TransferRequest request = new TransferRequest();
+        request.setSenderAccountId(idSender);
+        request.setReceiverAccountId(idReceiver);
+        request.setAmount(Money.ofMinorUnits(1));
+        return request;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ro.benchmarks;
+
+import com.ro.Application;
+import com.ro.converters.MoneyStorage;
+import com.ro.model.Money;
+import com.ro.services.TransferService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Compares the DECIMAL and MINOR_UNITS money storages: transfers per second and bytes allocated per
+ * transfer (read both accounts, compute, write both balances) and per read of the whole account table.
+ * Like TransferModeBenchmark it is a plain main class, run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ro.benchmarks.MoneyStorageBenchmark}.
+ * <p>
+ * It runs on one thread, so the allocations can be read from the ThreadMXBean of the HotSpot JVM.
+ */
+public class MoneyStorageBenchmark {
+
+    private static final int ACCOUNTS = 1_000;
+    private static final int WARMUP_TRANSFERS = 20_000;
+    private static final int TRANSFERS = 50_000;
+    private static final int READS = 200;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        for (MoneyStorage storage : MoneyStorage.values()) {
+            run(storage);
+        }
+    }
+
+    private static void run(MoneyStorage storage) {
+        String profile = storage == MoneyStorage.MINOR_UNITS ? "minor-units" : "default";
+        try (ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                "--spring.profiles.active=" + profile, "--spring.main.web-application-type=none",
+                "--logging.level.root=WARN")) {
+            TransferService transferService = context.getBean(TransferService.class);
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+            jdbc.update("DELETE FROM account");
+            for (int i = 0; i < ACCOUNTS; i++) {
+                jdbc.update("INSERT INTO account(name, amount) VALUES (?, ?)", "Account " + i,
+                        storage.toJdbcValue(Money.ofMinorUnits(100_000_000)));
+            }
+            List<Long> ids = jdbc.queryForList("SELECT id FROM account ORDER BY id", Long.class);
+
+            transfer(transferService, ids, WARMUP_TRANSFERS);
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            transfer(transferService, ids, TRANSFERS);
+            long elapsed = System.nanoTime() - start;
+            long transferBytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+
+            readAll(transferService, READS);
+            bytes = THREADS.getCurrentThreadAllocatedBytes();
+            readAll(transferService, READS);
+            long readBytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+
+            System.out.printf("%-12s %,10.0f transfers/s  %,8d bytes/transfer  %,10d bytes/getAllAccounts%n",
+                    storage,
+                    TRANSFERS / (elapsed / 1_000_000_000.0),
+                    transferBytes / TRANSFERS,
+                    readBytes / READS);
+        }
+    }
+
+    private static void transfer(TransferService transferService, List<Long> ids, int transfers) {
+        Money amount = Money.ofMinorUnits(1_25);
+        for (int i = 0; i < transfers; i++) {
+            transferService.transferMoney(ids.get(i % ids.size()), ids.get((i + 1) % ids.size()), amount);
+        }
+    }
+
+    private static void readAll(TransferService transferService, int reads) {
+        for (int i = 0; i < reads; i++) {
+            transferService.getAllAccounts().forEach(account -> account.getAmount().minorUnits());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ro.benchmarks;
+
+import com.ro.Application;
+import com.ro.search.AccountNameIndex;
+import com.ro.search.NameMatch;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Name searches over 1,000,000 accounts on the embedded H2 database: the SQL queries with and without
+ * the account_name index against the AccountNameIndex lookups. Like TransferModeBenchmark it is a plain
+ * main class, run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ro.benchmarks.NameSearchBenchmark}.
+ * <p>
+ * Only the lookup of the matching ids is timed (reading the accounts by primary key is the same for all).
+ */
+public class NameSearchBenchmark {
+
+    private static final int ACCOUNTS = 1_000_000;
+    private static final int QUERIES = 200;
+    private static final int MAX_RESULTS = 1000;
+
+    private static final String[] FIRST_NAMES = {"Jane", "John", "Maria", "Andrei", "Elena", "Mihai", "Ana",
+            "George", "Ioana", "Stefan", "Laura", "Paul", "Irina", "Victor", "Diana", "Radu", "Alina", "Dan"};
+    private static final String[] LAST_NAMES = {"Down", "Read", "Popescu", "Ionescu", "Stan", "Dumitru",
+            "Marin", "Tudor", "Moldovan", "Barbu", "Constantin", "Lungu", "Munteanu", "Florea", "Rusu"};
+
+    public static void main(String[] args) {
+        try (ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                "--spring.main.web-application-type=none", "--logging.level.root=WARN")) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            AccountNameIndex index = context.getBean(AccountNameIndex.class);
+
+            List<String> names = insertAccounts(jdbc);
+            long start = System.nanoTime();
+            index.rebuild(); //the rows were inserted with plain SQL
+            System.out.printf("AccountNameIndex built in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            Random random = new Random(42);
+            List<String> exact = new ArrayList<>();
+            List<String> prefixes = new ArrayList<>();
+            List<String> substrings = new ArrayList<>();
+            for (int i = 0; i < QUERIES; i++) {
+                String name = names.get(random.nextInt(names.size()));
+                exact.add(name);
+                prefixes.add(name.substring(0, name.indexOf(' ') + 3)); //e.g. "Jane Do"
+                substrings.add(name.substring(name.indexOf(' ') + 1)); //e.g. "Down 123", matches the middle
+            }
+
+            jdbc.execute("DROP INDEX account_name");
+            time("exact, SQL without index", exact, q -> jdbc.queryForList(
+                    "SELECT id FROM account WHERE name = ?", Long.class, q).size());
+            jdbc.execute("CREATE INDEX account_name ON account(name)");
+            time("exact, SQL with index", exact, q -> jdbc.queryForList(
+                    "SELECT id FROM account WHERE name = ?", Long.class, q).size());
+            time("exact ignore case, SQL", exact, q -> jdbc.queryForList(
+                    "SELECT id FROM account WHERE LOWER(name) = ? LIMIT " + MAX_RESULTS, Long.class,
+                    q.toLowerCase(Locale.ROOT)).size());
+            time("exact ignore case, AccountNameIndex", exact,
+                    q -> index.search(q, NameMatch.IGNORE_CASE, MAX_RESULTS).size());
+            time("prefix, SQL", prefixes, q -> jdbc.queryForList(
+                    "SELECT id FROM account WHERE LOWER(name) LIKE ? ORDER BY name LIMIT " + MAX_RESULTS, Long.class,
+                    q.toLowerCase(Locale.ROOT) + "%").size());
+            time("prefix, AccountNameIndex", prefixes,
+                    q -> index.search(q, NameMatch.PREFIX, MAX_RESULTS).size());
+            time("contains, SQL", substrings, q -> jdbc.queryForList(
+                    "SELECT id FROM account WHERE LOWER(name) LIKE ? LIMIT " + MAX_RESULTS, Long.class,
+                    "%" + q.toLowerCase(Locale.ROOT) + "%").size());
+            time("contains, AccountNameIndex", substrings,
+                    q -> index.search(q, NameMatch.CONTAINS, MAX_RESULTS).size());
+        }
+    }
+
+    private static List<String> insertAccounts(JdbcTemplate jdbc) {
+        List<String> names = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            names.add(FIRST_NAMES[i % FIRST_NAMES.length] + " "
+                    + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length] + " " + i);
+        }
+        jdbc.update("DELETE FROM account");
+        jdbc.batchUpdate("INSERT INTO account(name, amount) VALUES (?, 100)", names, 10_000,
+                (ps, name) -> ps.setString(1, name));
+        return names;
+    }
+
+    private static void time(String label, List<String> queries, Function<String, Integer> search) {
+        for (String query : queries.subList(0, 10)) { //warm up
+            search.apply(query);
+        }
+        long results = 0;
+        long start = System.nanoTime();
+        for (String query : queries) {
+            results += search.apply(query);
+        }
+        double micros = (System.nanoTime() - start) / 1_000.0 / queries.size();
+        System.out.printf("%-38s %,12.1f us/query  %,8.1f results/query%n", label, micros, results / (double) queries.size());
+    }
+}
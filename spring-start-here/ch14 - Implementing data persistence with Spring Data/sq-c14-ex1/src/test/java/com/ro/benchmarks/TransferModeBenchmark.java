@@ -0,0 +1,113 @@
+package com.ro.benchmarks;
+
+import com.ro.Application;
+import com.ro.model.Money;
+import com.ro.services.TransferMode;
+import com.ro.services.TransferService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the transfer modes (CLASSIC, ATOMIC, OPTIMISTIC) against the embedded H2 database.
+ * It is a plain main class (not picked up by surefire); run it from the IDE or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ro.benchmarks.TransferModeBenchmark}.
+ * <p>
+ * Besides the throughput, it prints how many SQL statements (COMMIT/ROLLBACK excluded) H2 executed per
+ * transfer, taken from INFORMATION_SCHEMA.QUERY_STATISTICS, how many transfers failed (e.g. chosen as a
+ * deadlock victim by H2) and the total balance, which must not change.
+ */
+public class TransferModeBenchmark {
+
+    private static final int ACCOUNTS = 100;
+    private static final int WARMUP_TRANSFERS = 5_000;
+    private static final int TRANSFERS = 20_000;
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        for (TransferMode mode : TransferMode.values()) {
+            run(mode);
+        }
+    }
+
+    private static void run(TransferMode mode) throws Exception {
+        try (ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                "--transfer.mode=" + mode, "--spring.main.web-application-type=none", "--logging.level.root=WARN")) {
+            TransferService transferService = context.getBean(TransferService.class);
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+            jdbc.update("DELETE FROM account");
+            for (int i = 0; i < ACCOUNTS; i++) {
+                jdbc.update("INSERT INTO account(name, amount) VALUES (?, ?)", "Account " + i, 1_000_000);
+            }
+            List<Long> ids = jdbc.queryForList("SELECT id FROM account ORDER BY id", Long.class);
+
+            transfer(transferService, ids, WARMUP_TRANSFERS);
+
+            jdbc.execute("SET QUERY_STATISTICS TRUE");
+            long start = System.nanoTime();
+            int failed = transfer(transferService, ids, TRANSFERS);
+            long elapsed = System.nanoTime() - start;
+
+            Long statements = jdbc.queryForObject(
+                    "SELECT SUM(EXECUTION_COUNT) FROM INFORMATION_SCHEMA.QUERY_STATISTICS " +
+                    "WHERE SQL_STATEMENT NOT IN ('COMMIT', 'ROLLBACK') AND SQL_STATEMENT NOT LIKE '%QUERY_STATISTICS%'",
+                    Long.class);
+            jdbc.execute("SET QUERY_STATISTICS FALSE"); //disabling the statistics also clears them
+            BigDecimal total = jdbc.queryForObject("SELECT SUM(amount) FROM account", BigDecimal.class);
+
+            System.out.printf("%-10s %,10.0f transfers/s  %5.2f statements/transfer  %,d failed  total balance %s%n",
+                    mode,
+                    TRANSFERS / (elapsed / 1_000_000_000.0),
+                    statements / (double) TRANSFERS,
+                    failed,
+                    total);
+        }
+    }
+
+    /**
+     * Every thread transfers around the same ring of accounts, half of them in the opposite direction,
+     * so that concurrent transfers between the same pair of accounts are frequent.
+     *
+     * @return the number of transfers that threw an exception
+     */
+    private static int transfer(TransferService transferService, List<Long> ids, int transfers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                boolean reversed = t % 2 == 1;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < transfers / THREADS; i++) {
+                        long a = ids.get(i % ids.size());
+                        long b = ids.get((i + 1) % ids.size());
+                        try {
+                            if (reversed) {
+                                transferService.transferMoney(b, a, Money.ofMinorUnits(100));
+                            } else {
+                                transferService.transferMoney(a, b, Money.ofMinorUnits(100));
+                            }
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return failed.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
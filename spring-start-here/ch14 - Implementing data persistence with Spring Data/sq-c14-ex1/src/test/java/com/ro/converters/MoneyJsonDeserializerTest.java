@@ -0,0 +1,34 @@
+package com.ro.converters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.ro.model.Money;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyJsonDeserializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("Test whole, decimal and string amounts are read as minor units")
+    public void readAmounts() throws Exception {
+        assertEquals(Money.ofMinorUnits(10_000), objectMapper.readValue("100", Money.class));
+        assertEquals(Money.ofMinorUnits(1_055), objectMapper.readValue("10.55", Money.class));
+        assertEquals(Money.ofMinorUnits(1_050), objectMapper.readValue("10.500", Money.class));
+        assertEquals(Money.ofMinorUnits(1_050), objectMapper.readValue("\"10.5\"", Money.class));
+    }
+
+    @Test
+    @DisplayName("Test sub-cent and out of range amounts are rejected instead of rounded")
+    public void rejectInvalidAmounts() {
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("0.005", Money.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("\"0.005\"", Money.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("100000000000000000", Money.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("1e30", Money.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("\"abc\"", Money.class));
+    }
+}
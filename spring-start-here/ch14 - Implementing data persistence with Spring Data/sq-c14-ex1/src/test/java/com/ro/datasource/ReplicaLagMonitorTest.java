@@ -0,0 +1,71 @@
+package com.ro.datasource;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaLagMonitorTest {
+
+    private final DataSource primary = database();
+    private final DataSource replica = database();
+    private final ReplicaLagMonitor monitor = new ReplicaLagMonitor(primary, replica);
+
+    @Test
+    @DisplayName("Test the lag is infinite until a heartbeat reaches the replica")
+    public void unknownBeforeFirstHeartbeat() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(primary);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(replica);
+
+        monitor.beat();
+
+        assertEquals(ChronoUnit.FOREVER.getDuration(), monitor.lag());
+    }
+
+    @Test
+    @DisplayName("Test the lag is infinite when the replica can't be read")
+    public void unknownWithoutReplicaTable() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(primary);
+
+        monitor.beat();
+
+        assertEquals(ChronoUnit.FOREVER.getDuration(), monitor.lag());
+    }
+
+    @Test
+    @DisplayName("Test the lag is the age of the heartbeat replicated so far")
+    public void lagOfReplicatedHeartbeat() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(primary);
+        InProcessReplication replication = new InProcessReplication(primary, replica, new ClassPathResource("schema.sql"));
+
+        //when the heartbeats are replicated
+        monitor.beat();
+        replication.replicate();
+        monitor.beat();
+
+        //then the lag is small
+        assertTrue(monitor.lag().compareTo(Duration.ofSeconds(1)) < 0, monitor.lag().toString());
+
+        //when the replication stops (the replica keeps a heartbeat of 5 s ago)
+        new JdbcTemplate(replica).update("UPDATE replication_heartbeat SET beat_millis = beat_millis - 5000");
+        monitor.beat();
+
+        //then the lag grows
+        assertTrue(monitor.lag().compareTo(Duration.ofSeconds(5)) >= 0, monitor.lag().toString());
+    }
+
+    private static DataSource database() {
+        return new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
@@ -0,0 +1,57 @@
+package com.ro.journal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BalanceSnapshotTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("Test transfers, reversals, inserted and deleted accounts are applied, and older records skipped")
+    public void applyRecords() throws Exception {
+        BalanceSnapshot snapshot = new BalanceSnapshot(10);
+        snapshot.put(1, "Jane Down", 100_000);
+        snapshot.put(2, "John Read", 100_000);
+
+        snapshot.apply(new JournalRecord(9, 1, 2, 99_999, 0)); //already in the snapshot
+        snapshot.apply(new JournalRecord(11, 1, 2, 1_055, 0));
+        snapshot.apply(new JournalRecord(12, TransferJournal.NO_ACCOUNT, 3, 5_000, 0)); //account 3 inserted
+        snapshot.apply(new JournalRecord(13, 2, 3, 2_000, 0));
+        snapshot.apply(new JournalRecord(14, 2, 3, -2_000, 0)); //rolled back after it was journaled
+        snapshot.apply(new JournalRecord(15, 1, TransferJournal.NO_ACCOUNT, 0, 0)); //account 1 deleted
+
+        assertEquals(15, snapshot.sequence());
+        assertFalse(snapshot.balances().containsKey(1L));
+        assertEquals(101_055, snapshot.balances().get(2L));
+        assertEquals(5_000, snapshot.balances().get(3L));
+        assertEquals(List.of(3L), snapshot.idsWithoutName());
+
+        snapshot.name(3, "Mary Lake");
+        snapshot.write(directory.resolve("balances.snapshot"));
+        BalanceSnapshot read = BalanceSnapshot.read(directory.resolve("balances.snapshot"));
+        assertEquals(snapshot.balances(), read.balances());
+        assertEquals("Mary Lake", read.name(3));
+        assertEquals(15, read.sequence());
+    }
+
+    @Test
+    @DisplayName("Test a record of an account the snapshot doesn't have is an error")
+    public void unknownAccount() {
+        BalanceSnapshot snapshot = new BalanceSnapshot(0);
+        snapshot.put(1, "Jane Down", 100_000);
+
+        assertThrows(IllegalStateException.class, () -> snapshot.apply(new JournalRecord(1, 1, 99, 100, 0)));
+        assertThrows(IllegalStateException.class, () -> snapshot.apply(new JournalRecord(1, 99, TransferJournal.NO_ACCOUNT, 0, 0)));
+        assertEquals(100_000, snapshot.balances().get(1L));
+    }
+}
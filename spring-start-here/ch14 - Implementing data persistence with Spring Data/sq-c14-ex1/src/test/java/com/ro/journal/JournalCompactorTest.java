@@ -0,0 +1,100 @@
+package com.ro.journal;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import com.ro.services.TransferService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//segments of 4 records, so a few transfers already fill (seal) one; compaction only runs when called
+@SpringBootTest(properties = {
+        "transfer.journal.enabled=true",
+        "transfer.journal.segment-records=4",
+        "transfer.journal.compaction-interval=3600000"})
+@DirtiesContext
+class JournalCompactorTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferJournal journal;
+
+    @Autowired
+    private JournalCompactor compactor;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        registry.add("transfer.journal.directory", directory::toString);
+    }
+
+    @Test
+    @DisplayName("Test compaction folds the sealed segments into a snapshot and restore reconciles the table with it")
+    public void compactAndRestore() throws Exception {
+        //an account inserted after the baseline snapshot, then transfers that fill more than one segment
+        Account mary = new Account();
+        mary.setName("Mary Lake");
+        mary.setAmount(Money.of(new BigDecimal("50")));
+        long maryId = accountRepository.save(mary).getId();
+        Money janeBefore = balance(1);
+        transferService.transferMoney(1, maryId, Money.of(new BigDecimal("10.55")));
+        for (int i = 0; i < 4; i++) {
+            transferService.transferMoney(1, 2, Money.of(new BigDecimal("1")));
+        }
+        Money jane = balance(1);
+        Money john = balance(2);
+        assertEquals(janeBefore.minus(Money.of(new BigDecimal("14.55"))), jane);
+
+        compactor.compact();
+        assertEquals(1, journal.segments().size());
+        BalanceSnapshot snapshot = BalanceSnapshot.read(latestSnapshot());
+        assertEquals("Mary Lake", snapshot.name(maryId));
+        assertEquals(Money.of(new BigDecimal("60.55")).minorUnits(), snapshot.balances().get(maryId));
+
+        //the table loses the balances, and gets an account the journal doesn't know
+        jdbc.update("UPDATE account SET amount = 0");
+        jdbc.update("DELETE FROM account WHERE id = ?", maryId);
+        jdbc.update("INSERT INTO account(name, amount) VALUES ('Plain Sql', 7)");
+        long plainId = jdbc.queryForObject("SELECT id FROM account WHERE name = 'Plain Sql'", Long.class);
+
+        assertEquals(3, compactor.restoreAccountTable());
+
+        assertEquals(jane, balance(1));
+        assertEquals(john, balance(2));
+        assertEquals(Money.of(new BigDecimal("60.55")), balance(maryId));
+        assertEquals("Mary Lake", accountRepository.findById(maryId).orElseThrow().getName());
+        assertEquals(Money.of(new BigDecimal("7")), balance(plainId));
+    }
+
+    private Money balance(long id) {
+        return accountRepository.findById(id).orElseThrow().getAmount();
+    }
+
+    private Path latestSnapshot() throws IOException {
+        try (Stream<Path> files = Files.list(journal.directory())) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".snapshot")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ro.journal;
+
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class TransferJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("Test the records are read back in order across segments and the journal continues after a restart")
+    public void replayAfterRestart() throws Exception {
+        TransferJournal journal = new TransferJournal(mock(AccountRepository.class), directory, 4);
+        for (int i = 1; i <= 6; i++) {
+            journal.append(1, 2, i * 100L, i);
+        }
+        journal.close();
+
+        TransferJournal restarted = new TransferJournal(mock(AccountRepository.class), directory, 4);
+        assertEquals(6, restarted.lastSequence());
+        assertEquals(7, restarted.append(2, 1, 50, 7));
+
+        List<JournalRecord> records = new ArrayList<>();
+        for (Path segment : restarted.segments()) {
+            TransferJournal.read(segment, records::add);
+        }
+        assertEquals(2, restarted.segments().size());
+        assertEquals(7, records.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(new JournalRecord(i + 1, 1, 2, (i + 1) * 100L, i + 1), records.get(i));
+        }
+        assertEquals(new JournalRecord(7, 2, 1, 50, 7), records.get(6));
+        restarted.close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.ro.search;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import com.ro.services.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//the changes are committed (or rolled back) for real, and the created accounts deleted after every test
+@SpringBootTest
+class AccountNameIndexListenerTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountNameIndex accountNameIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    public void deleteCreatedAccounts() {
+        accountRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    @DisplayName("Test a committed account is found by an exact, prefix and contains search")
+    public void committedAccountIsSearchable() {
+        long id = transactionTemplate.execute(status -> create("Margaret Hollis"));
+
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("Margaret Hollis", NameMatch.EXACT)));
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("MARGARET HOLLIS", NameMatch.IGNORE_CASE)));
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("marg", NameMatch.PREFIX)));
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("et hol", NameMatch.CONTAINS)));
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("ho", NameMatch.CONTAINS)));
+    }
+
+    @Test
+    @DisplayName("Test a rolled back account is not indexed")
+    public void rolledBackAccountIsNotIndexed() {
+        transactionTemplate.executeWithoutResult(status -> {
+            create("Rupert Vance");
+            assertTrue(accountNameIndex.search("rupert", NameMatch.PREFIX, 10).isEmpty()); //not before the commit
+            status.setRollbackOnly();
+        });
+
+        assertTrue(accountNameIndex.search("rupert", NameMatch.PREFIX, 10).isEmpty());
+        assertTrue(accountNameIndex.search("t van", NameMatch.CONTAINS, 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test a rolled back rename keeps the account under its old name")
+    public void rolledBackRenameKeepsOldName() {
+        long id = transactionTemplate.execute(status -> create("Cornelia Brandt"));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Account account = accountRepository.findById(id).orElseThrow();
+            account.setName("Ottilie Brandt");
+            accountRepository.save(account);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("cornelia", NameMatch.PREFIX)));
+        assertEquals(List.of(id), ids(transferService.findAccountsByName("lia bra", NameMatch.CONTAINS)));
+        assertTrue(transferService.findAccountsByName("ottilie", NameMatch.PREFIX).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test a committed delete removes the account from the index")
+    public void committedDeleteIsRemoved() {
+        long id = transactionTemplate.execute(status -> create("Florian Weiss"));
+
+        transactionTemplate.executeWithoutResult(status -> accountRepository.deleteById(id));
+
+        assertTrue(accountNameIndex.search("florian", NameMatch.PREFIX, 10).isEmpty());
+        assertTrue(accountNameIndex.search("n wei", NameMatch.CONTAINS, 10).isEmpty());
+    }
+
+    private long create(String name) {
+        Account account = new Account();
+        account.setName(name);
+        account.setAmount(Money.ZERO);
+        long id = accountRepository.save(account).getId();
+        createdIds.add(id);
+        return id;
+    }
+
+    private static List<Long> ids(List<Account> accounts) {
+        return accounts.stream().map(Account::getId).toList();
+    }
+}
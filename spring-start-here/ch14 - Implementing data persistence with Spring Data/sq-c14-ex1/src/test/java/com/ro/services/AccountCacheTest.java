@@ -0,0 +1,143 @@
+package com.ro.services;
+
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.data.relational.core.conversion.MutableAggregateChange;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccountCacheTest {
+
+    private static final Money OLD_BALANCE = Money.ofMinorUnits(100000);
+    private static final Money NEW_BALANCE = Money.ofMinorUnits(90000);
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+    private final AccountCache accountCache =
+            new AccountCache(accountRepository, new CaffeineCacheManager("accounts", "accountIdsByName"));
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final AtomicReference<Money> balance = new AtomicReference<>(OLD_BALANCE);
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test an account evicted while it is being loaded by id is not cached with the old balance")
+    public void evictDuringLoadById() throws Exception {
+        //given a load that reads the old balance and is slow to return it
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(accountRepository.findById(1L)).thenAnswer(invocation -> {
+            Account account = account(1, "Jane Down", balance.get());
+            if (first.compareAndSet(true, false)) {
+                blockUntilReleased();
+            }
+            return Optional.of(account);
+        });
+
+        //when the balance changes and the account is evicted before the load returns
+        Future<?> load = executor.submit(() -> accountCache.findById(1));
+        evictDuringLoad(load);
+
+        //then the next read loads the new balance
+        assertEquals(NEW_BALANCE, accountCache.findById(1).orElseThrow().getAmount());
+    }
+
+    @Test
+    @DisplayName("Test a search by name running while an account is evicted doesn't cache the old balance")
+    public void evictDuringSearchByName() throws Exception {
+        //given a search that reads the old balance and is slow to return it
+        when(accountRepository.findAccountsByName("Jane Down")).thenAnswer(invocation -> {
+            List<Account> found = List.of(account(1, "Jane Down", balance.get()));
+            blockUntilReleased();
+            return found;
+        });
+        when(accountRepository.findById(1L))
+                .thenAnswer(invocation -> Optional.of(account(1, "Jane Down", balance.get())));
+
+        //when the balance changes and the account is evicted before the search returns
+        Future<?> search = executor.submit(() -> accountCache.findAccountsByName("Jane Down"));
+        evictDuringLoad(search);
+
+        //then the account is read with the new balance
+        assertEquals(NEW_BALANCE, accountCache.findById(1).orElseThrow().getAmount());
+        assertEquals(NEW_BALANCE, accountCache.findAccountsByName("Jane Down").get(0).getAmount());
+    }
+
+    @Test
+    @DisplayName("Test saving a created or renamed account evicts the search by its name")
+    public void saveEvictsSearchByName() {
+        //given a cached search
+        when(accountRepository.findAccountsByName("Jane Down"))
+                .thenReturn(List.of(account(1, "Jane Down", OLD_BALANCE)));
+        when(accountRepository.findById(1L))
+                .thenReturn(Optional.of(account(1, "Jane Down", OLD_BALANCE)));
+        assertEquals(List.of(1L), ids(accountCache.findAccountsByName("Jane Down")));
+
+        //when account 1 is renamed and account 3 is created with its old name
+        Account renamed = account(1, "Jane Smith", OLD_BALANCE);
+        Account created = account(3, "Jane Down", Money.ZERO);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(renamed));
+        when(accountRepository.findById(3L)).thenReturn(Optional.of(created));
+        when(accountRepository.findAccountsByName("Jane Down")).thenReturn(List.of(created));
+        accountCache.onAccountSaved(new AfterSaveEvent<>(renamed, MutableAggregateChange.forSave(renamed)));
+        accountCache.onAccountSaved(new AfterSaveEvent<>(created, MutableAggregateChange.forSave(created)));
+
+        //then the search finds the created account only
+        assertEquals(List.of(3L), ids(accountCache.findAccountsByName("Jane Down")));
+    }
+
+    /**
+     * Waits until the given load reads the old balance, then changes it and evicts the account while
+     * the load is still running.
+     */
+    private void evictDuringLoad(Future<?> load) throws Exception {
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        balance.set(NEW_BALANCE);
+        Future<?> evict = executor.submit(() -> accountCache.evict(1));
+        Thread.sleep(50); //let the eviction reach the cache before the load returns
+        release.countDown();
+        load.get(5, TimeUnit.SECONDS);
+        evict.get(5, TimeUnit.SECONDS);
+    }
+
+    private void blockUntilReleased() throws InterruptedException {
+        loading.countDown();
+        assertTrue(release.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Account account(long id, String name, Money amount) {
+        Account account = new Account();
+        account.setId(id);
+        account.setName(name);
+        account.setAmount(amount);
+        account.setVersion(0L);
+        return account;
+    }
+
+    private static List<Long> ids(List<Account> accounts) {
+        return accounts.stream().map(Account::getId).toList();
+    }
+}
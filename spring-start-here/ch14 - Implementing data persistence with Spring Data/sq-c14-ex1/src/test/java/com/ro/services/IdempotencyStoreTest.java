@@ -0,0 +1,75 @@
+package com.ro.services;
+
+import com.ro.exceptions.IdempotencyKeyReusedException;
+import com.ro.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore idempotencyStore =
+            new IdempotencyStore(mock(JdbcTemplate.class), new SimpleMeterRegistry(), 100, Duration.ofHours(1));
+
+    private final String hash = IdempotencyStore.requestHash(1, 2, Money.ofMinorUnits(1000));
+
+    @Test
+    @DisplayName("Test a retry with the same key and transfer gets the result of the first transfer")
+    public void retryGetsFirstResult() {
+        AtomicInteger transfers = new AtomicInteger();
+        CompletableFuture<Void> first = idempotencyStore.execute("key-1", hash, () -> {
+            transfers.incrementAndGet();
+            return new CompletableFuture<>(); //still running
+        });
+        CompletableFuture<Void> retry = idempotencyStore.execute("key-1", hash, () -> {
+            transfers.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertSame(first, retry);
+        assertEquals(1, transfers.get());
+    }
+
+    @Test
+    @DisplayName("Test the same key sent with another transfer is refused")
+    public void sameKeyOtherTransferIsRefused() {
+        idempotencyStore.execute("key-1", hash, () -> CompletableFuture.completedFuture(null));
+
+        String otherHash = IdempotencyStore.requestHash(1, 2, Money.ofMinorUnits(1001));
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> idempotencyStore.execute("key-1", otherHash, () -> CompletableFuture.completedFuture(null)));
+    }
+
+    @Test
+    @DisplayName("Test a failed transfer is forgotten, so it can be retried with the same key")
+    public void failedTransferIsForgotten() {
+        idempotencyStore.execute("key-1", hash, () -> CompletableFuture.failedFuture(new IllegalStateException()));
+
+        AtomicInteger transfers = new AtomicInteger();
+        idempotencyStore.execute("key-1", hash, () -> {
+            transfers.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        assertEquals(1, transfers.get());
+    }
+
+    @Test
+    @DisplayName("Test the request hash depends on the sender, the receiver and the amount")
+    public void requestHash() {
+        assertEquals(64, hash.length());
+        assertEquals(hash, IdempotencyStore.requestHash(1, 2, Money.ofMinorUnits(1000)));
+        assertNotEquals(hash, IdempotencyStore.requestHash(2, 1, Money.ofMinorUnits(1000)));
+        assertNotEquals(hash, IdempotencyStore.requestHash(1, 3, Money.ofMinorUnits(1000)));
+    }
+}
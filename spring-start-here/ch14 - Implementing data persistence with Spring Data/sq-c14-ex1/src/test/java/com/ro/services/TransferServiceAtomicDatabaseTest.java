@@ -0,0 +1,93 @@
+package com.ro.services;
+
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.dto.TransferStatus;
+import com.ro.exceptions.InvalidAmountException;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//runs the ATOMIC update against the H2 database of data.sql, rolled back after every test
+@SpringBootTest(properties = "transfer.mode=ATOMIC")
+@Transactional
+class TransferServiceAtomicDatabaseTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    @DisplayName("Test a fractional amount is transferred without losing the cents")
+    public void fractionalTransfer() {
+        transferService.transferMoney(1L, 2L, Money.of(new BigDecimal("10.55")));
+
+        assertEquals(Money.of(new BigDecimal("989.45")), accountRepository.findById(1L).orElseThrow().getAmount());
+        assertEquals(Money.of(new BigDecimal("1010.55")), accountRepository.findById(2L).orElseThrow().getAmount());
+    }
+
+    @Test
+    @DisplayName("Test a batch transfer of a negative or zero amount is refused and changes no balance")
+    public void batchNonPositiveAmount() {
+        //given
+        List<TransferRequest> requests = List.of(
+                request(1L, 2L, Money.ofMinorUnits(-500000)),
+                request(1L, 2L, Money.ZERO),
+                request(1L, 2L, Money.ofMinorUnits(1000)));
+
+        //when
+        List<TransferStatus> statuses = transferService.transferMoneyBatch(requests).stream()
+                .map(TransferResult::getStatus)
+                .toList();
+
+        //then
+        assertEquals(List.of(TransferStatus.INVALID_AMOUNT, TransferStatus.INVALID_AMOUNT, TransferStatus.COMPLETED), statuses);
+        assertEquals(Money.of(new BigDecimal("990")), accountRepository.findById(1L).orElseThrow().getAmount());
+        assertEquals(Money.of(new BigDecimal("1010")), accountRepository.findById(2L).orElseThrow().getAmount());
+    }
+
+    @Test
+    @DisplayName("Test a single transfer of a negative amount is refused")
+    public void negativeAmount() {
+        assertThrows(InvalidAmountException.class,
+                () -> transferService.transferMoney(1L, 2L, Money.ofMinorUnits(-500000)));
+
+        assertEquals(Money.of(new BigDecimal("1000")), accountRepository.findById(2L).orElseThrow().getAmount());
+    }
+
+    @Test
+    @DisplayName("Test a chain with a negative leg is refused as a whole")
+    public void chainNegativeLeg() {
+        //given a leg that would take money from its receiver
+        List<TransferRequest> legs = List.of(
+                request(1L, 2L, Money.ofMinorUnits(1000)),
+                request(1L, 2L, Money.ofMinorUnits(-500000)));
+
+        //when
+        assertThrows(InvalidAmountException.class, () -> transferService.transferChain(legs));
+
+        //then
+        assertEquals(Money.of(new BigDecimal("1000")), accountRepository.findById(1L).orElseThrow().getAmount());
+        assertEquals(Money.of(new BigDecimal("1000")), accountRepository.findById(2L).orElseThrow().getAmount());
+    }
+
+    private static TransferRequest request(long senderAccountId, long receiverAccountId, Money amount) {
+        TransferRequest request = new TransferRequest();
+        request.setSenderAccountId(senderAccountId);
+        request.setReceiverAccountId(receiverAccountId);
+        request.setAmount(amount);
+        return request;
+    }
+}
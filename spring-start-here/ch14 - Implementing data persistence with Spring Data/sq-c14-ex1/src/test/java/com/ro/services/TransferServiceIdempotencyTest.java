@@ -0,0 +1,125 @@
+package com.ro.services;
+
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.dto.TransferStatus;
+import com.ro.exceptions.IdempotencyKeyReusedException;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//the transfers go through TransferService directly, as they would on an instance that never saw the key,
+//and commit: the context (and its database) is dropped after the class
+@SpringBootTest(properties = "transfer.mode=ATOMIC")
+@DirtiesContext
+class TransferServiceIdempotencyTest {
+
+    private static final Money AMOUNT = Money.ofMinorUnits(1000);
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    @DisplayName("Test a transfer retried with a recorded key is not applied again")
+    public void retryIsNotAppliedAgain() {
+        Money before = balance(1);
+
+        transferService.transferMoney(1, 2, AMOUNT, "retry-key");
+        transferService.transferMoney(1, 2, AMOUNT, "retry-key");
+
+        assertEquals(before.minus(AMOUNT), balance(1));
+    }
+
+    @Test
+    @DisplayName("Test a recorded key sent with another transfer is refused and nothing is applied")
+    public void recordedKeyWithOtherTransferIsRefused() {
+        transferService.transferMoney(1, 2, AMOUNT, "reused-key");
+        Money before = balance(1);
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> transferService.transferMoney(1, 2, AMOUNT.plus(AMOUNT), "reused-key"));
+
+        assertEquals(before, balance(1));
+    }
+
+    @Test
+    @DisplayName("Test concurrent transfers with the same key are applied once and all succeed")
+    public void concurrentSameKeyAppliedOnce() throws Exception {
+        Money before = balance(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> transfers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                transfers.add(executor.submit(() -> {
+                    start.await();
+                    transferService.transferMoney(1, 2, AMOUNT, "concurrent-key");
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> transfer : transfers) {
+                transfer.get(10, TimeUnit.SECONDS); //none fails with a duplicate key
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(before.minus(AMOUNT), balance(1));
+    }
+
+    @Test
+    @DisplayName("Test a batch reports the recorded keys as applied or, for another transfer, as reused")
+    public void batchChecksRecordedKeys() {
+        transferService.transferMoney(1, 2, AMOUNT, "batch-key");
+        Money before = balance(1);
+
+        List<TransferStatus> statuses = transferService.transferMoneyBatch(List.of(
+                        request(AMOUNT, "batch-key"),
+                        request(AMOUNT.plus(AMOUNT), "batch-key"),
+                        request(AMOUNT, "new-batch-key"),
+                        request(AMOUNT.plus(AMOUNT), "new-batch-key")))
+                .stream()
+                .map(TransferResult::getStatus)
+                .toList();
+
+        assertEquals(List.of(
+                TransferStatus.ALREADY_APPLIED,
+                TransferStatus.IDEMPOTENCY_KEY_REUSED,
+                TransferStatus.COMPLETED,
+                TransferStatus.IDEMPOTENCY_KEY_REUSED), statuses);
+        assertEquals(before.minus(AMOUNT), balance(1));
+    }
+
+    private Money balance(long id) {
+        return accountRepository.findById(id).orElseThrow().getAmount();
+    }
+
+    private static TransferRequest request(Money amount, String idempotencyKey) {
+        TransferRequest request = new TransferRequest();
+        request.setSenderAccountId(1);
+        request.setReceiverAccountId(2);
+        request.setAmount(amount);
+        request.setIdempotencyKey(idempotencyKey);
+        return request;
+    }
+}
@@ -0,0 +1,86 @@
+package com.ro.stats;
+
+import com.ro.dto.AccountStatistics;
+import com.ro.model.Account;
+import com.ro.model.Money;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//the changes are committed (or rolled back) for real, so the context (and its database) is dropped after the class
+@SpringBootTest
+@DirtiesContext
+class AccountStatsListenerTest {
+
+    private static final Money BALANCE = Money.ofMinorUnits(50000);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountStats accountStats;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Test a committed account is counted once the transaction commits")
+    public void committedAccountIsCounted() {
+        AccountStatistics before = accountStats.snapshot();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            create("Committed Account");
+            assertEquals(before.getCount(), accountStats.snapshot().getCount()); //not before the commit
+        });
+
+        AccountStatistics after = accountStats.snapshot();
+        assertEquals(before.getCount() + 1, after.getCount());
+        assertEquals(before.getTotalBalance().plus(BALANCE), after.getTotalBalance());
+    }
+
+    @Test
+    @DisplayName("Test a rolled back account is not counted")
+    public void rolledBackAccountIsNotCounted() {
+        AccountStatistics before = accountStats.snapshot();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            create("Rolled Back Account");
+            status.setRollbackOnly();
+        });
+
+        AccountStatistics after = accountStats.snapshot();
+        assertEquals(before.getCount(), after.getCount());
+        assertEquals(before.getTotalBalance(), after.getTotalBalance());
+    }
+
+    @Test
+    @DisplayName("Test a rolled back delete keeps the account counted, a committed one removes it")
+    public void deleteIsAppliedOnCommit() {
+        long id = transactionTemplate.execute(status -> create("Deleted Account"));
+        AccountStatistics before = accountStats.snapshot();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            accountRepository.deleteById(id);
+            status.setRollbackOnly();
+        });
+        assertEquals(before.getCount(), accountStats.snapshot().getCount());
+
+        transactionTemplate.executeWithoutResult(status -> accountRepository.deleteById(id));
+        AccountStatistics after = accountStats.snapshot();
+        assertEquals(before.getCount() - 1, after.getCount());
+        assertEquals(before.getTotalBalance().minus(BALANCE), after.getTotalBalance());
+    }
+
+    private long create(String name) {
+        Account account = new Account();
+        account.setName(name);
+        account.setAmount(BALANCE);
+        return accountRepository.save(account).getId();
+    }
+}
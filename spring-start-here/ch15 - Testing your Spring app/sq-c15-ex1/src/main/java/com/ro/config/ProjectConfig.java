@@ -0,0 +1,9 @@
+package com.ro.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.annotation.EnableRetry;
+
+@Configuration
+@EnableRetry //used by TransferService.transferMoney() in the OPTIMISTIC transfer mode
+public class ProjectConfig {
+}
@@ -1,6 +1,7 @@
 package com.ro.controllers;
 
 import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
 import com.ro.model.Account;
 import com.ro.services.TransferService;
 import lombok.RequiredArgsConstructor;
@@ -19,6 +20,10 @@ public class AccountController {
                 request.getReceiverAccountId(),
                 request.getAmount());
     }
+    @PostMapping("/transfers/batch")
+    public List<TransferResult> transferMoneyBatch(@RequestBody List<TransferRequest> requests) {
+        return transferService.transferMoneyBatch(requests);
+    }
     @GetMapping("/accounts")
     public Iterable<Account> getAllAccounts(@RequestParam(required = false) String name) {
         if (name == null) {
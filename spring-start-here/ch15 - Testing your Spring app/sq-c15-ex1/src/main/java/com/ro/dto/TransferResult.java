@@ -0,0 +1,18 @@
+package com.ro.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * The outcome of one item of a batch transfer request.
+ */
+@Getter
+@AllArgsConstructor
+public class TransferResult {
+    private long senderAccountId;
+    private long receiverAccountId;
+    private BigDecimal amount;
+    private TransferStatus status;
+}
@@ -0,0 +1,7 @@
+package com.ro.dto;
+
+public enum TransferStatus {
+    COMPLETED,
+    ACCOUNT_NOT_FOUND,
+    INSUFFICIENT_FUNDS
+}
@@ -3,6 +3,7 @@ package com.ro.model;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 
 import java.math.BigDecimal;
 
@@ -14,4 +15,6 @@ public class Account {
     private long id;
     private String name;
     private BigDecimal amount;
+    @Version //incremented by every update of the row, see TransferMode.OPTIMISTIC
+    private Long version;
 }
@@ -0,0 +1,26 @@
+package com.ro.repositories;
+
+import com.ro.model.Account;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+
+@RequiredArgsConstructor
+public class AccountBatchRepositoryImpl implements AccountBatchRepository {
+
+    private final JdbcTemplate jdbc;
+
+    @Value("${transfer.batch.jdbc-batch-size:500}")
+    private int batchSize = 500;
+
+    @Override
+    public void changeAmounts(Collection<Account> accounts) {
+        String sql = "UPDATE account SET amount = ?, version = version + 1 WHERE id = ?";
+        jdbc.batchUpdate(sql, accounts, batchSize, (ps, account) -> {
+            ps.setBigDecimal(1, account.getAmount());
+            ps.setLong(2, account.getId());
+        });
+    }
+}
@@ -6,13 +6,51 @@ import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
-public interface AccountRepository extends CrudRepository<Account, Long> {
+public interface AccountRepository extends CrudRepository<Account, Long>, AccountBatchRepository {
     @Query("select * from account where name = :name")
     List<Account> findAccountsByName(String name);
 
+    /**
+     * Reads and locks the given accounts until the end of the transaction. The rows are locked in id order,
+     * so two batches touching the same accounts can't deadlock.
+     */
+    @Query("SELECT * FROM account WHERE id IN (:ids) ORDER BY id FOR UPDATE")
+    List<Account> findAccountsForUpdate(Collection<Long> ids);
+
     @Modifying
-    @Query("UPDATE account SET amount = :amount WHERE id = :id")
+    @Query("UPDATE account SET amount = :amount, version = version + 1 WHERE id = :id")
     void changeAmount(long id, BigDecimal amount);
+
+    /**
+     * Writes the new balance only if nobody changed the account since it was read with the given version.
+     *
+     * @return 1 if the balance was written, 0 on a conflict (or if the account no longer exists)
+     */
+    @Modifying
+    @Query("UPDATE account SET amount = :amount, version = version + 1 WHERE id = :id AND version = :version")
+    int changeAmountIfVersion(long id, BigDecimal amount, long version);
+
+    /**
+     * Debits the sender and credits the receiver in one statement. The sender row is only updated if its
+     * balance covers the amount, so the method returns fewer rows than expected when an account is missing
+     * or the funds are insufficient. Both rows are located through the primary key index, so they are
+     * always locked in ascending id order, whatever the direction of the transfer. :amount is only used
+     * next to the amount column, so the database gives the parameter the type of the column (H2 would
+     * give it the INTEGER type of a literal such as ELSE 0 and drop the fraction).
+     */
+    @Modifying
+    @Query("""
+            UPDATE account SET amount = CASE
+                    WHEN :idSender = :idReceiver THEN amount
+                    WHEN id = :idSender THEN amount - :amount
+                    ELSE amount + :amount
+                END,
+                version = version + 1
+            WHERE id IN (:idSender, :idReceiver)
+              AND (id <> :idSender OR amount >= :amount)
+            """)
+    int transferAmount(long idSender, long idReceiver, BigDecimal amount);
 }
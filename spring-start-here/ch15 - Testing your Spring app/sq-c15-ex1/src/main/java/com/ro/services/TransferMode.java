@@ -0,0 +1,20 @@
+package com.ro.services;
+
+/**
+ * How TransferService applies a transfer to the account table.
+ */
+public enum TransferMode {
+    /**
+     * Reads both accounts, computes the new balances in Java and writes them back (four statements).
+     */
+    CLASSIC,
+    /**
+     * Applies the debit and the credit with a single guarded UPDATE statement.
+     */
+    ATOMIC,
+    /**
+     * Reads both accounts without locking them and writes each new balance only if the version of the
+     * row is still the one that was read. A conflict rolls the transfer back and it is retried.
+     */
+    OPTIMISTIC
+}
@@ -1,22 +1,61 @@
 package com.ro.services;
 
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.dto.TransferStatus;
 import com.ro.exceptions.AccountNotFoundException;
+import com.ro.exceptions.InsufficientFundsException;
 import com.ro.model.Account;
 import com.ro.repositories.AccountRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
 public class TransferService {
     private final AccountRepository accountRepository;
 
+    @Value("${transfer.mode:CLASSIC}")
+    private TransferMode transferMode = TransferMode.CLASSIC;
+
+    /**
+     * A transfer that lost an optimistic locking race (TransferMode.OPTIMISTIC) is rolled back and run again
+     * after a random (jittered) exponential backoff, up to transfer.optimistic.max-attempts times. The retry
+     * advice wraps the transaction, so every attempt reads the accounts in a new transaction.
+     */
+    @Retryable(retryFor = OptimisticLockingFailureException.class,
+            maxAttemptsExpression = "${transfer.optimistic.max-attempts:5}",
+            backoff = @Backoff(
+                    delayExpression = "${transfer.optimistic.backoff-delay:5}",
+                    maxDelayExpression = "${transfer.optimistic.backoff-max-delay:100}",
+                    multiplier = 2,
+                    random = true),
+            listeners = "transferRetryMetrics")
     @Transactional
     public void transferMoney(long idSender, long idReceiver, BigDecimal amount) {
+        if (transferMode == TransferMode.ATOMIC) {
+            transferMoneyAtomic(idSender, idReceiver, amount);
+            return;
+        }
+        if (transferMode == TransferMode.OPTIMISTIC) {
+            transferMoneyOptimistic(idSender, idReceiver, amount);
+            return;
+        }
+
         Account sender = accountRepository.findById(idSender).orElseThrow(AccountNotFoundException::new);
         Account receiver = accountRepository.findById(idReceiver).orElseThrow(AccountNotFoundException::new);
 
@@ -27,6 +66,106 @@ public class TransferService {
         accountRepository.changeAmount(idReceiver, receiverNewAmount);
     }
 
+    /**
+     * One round-trip on the happy path. The accounts are only read again when the update did not touch
+     * the expected rows, to tell a missing account apart from insufficient funds. Throwing rolls back
+     * the partial update (e.g. the receiver was credited but the sender was not debited).
+     */
+    private void transferMoneyAtomic(long idSender, long idReceiver, BigDecimal amount) {
+        int expectedRows = idSender == idReceiver ? 1 : 2;
+        int updatedRows = accountRepository.transferAmount(idSender, idReceiver, amount);
+
+        if (updatedRows != expectedRows) {
+            if (!accountRepository.existsById(idSender) || !accountRepository.existsById(idReceiver)) {
+                throw new AccountNotFoundException();
+            }
+            throw new InsufficientFundsException();
+        }
+    }
+
+    /**
+     * No locks are taken while reading. Each balance is written with a version check, in id order so that
+     * two transfers between the same accounts wait for each other instead of deadlocking. A failed check
+     * means another transaction changed the account after it was read: the exception rolls back this
+     * attempt and the @Retryable advice runs it again with fresh balances.
+     */
+    private void transferMoneyOptimistic(long idSender, long idReceiver, BigDecimal amount) {
+        Account sender = accountRepository.findById(idSender).orElseThrow(AccountNotFoundException::new);
+        Account receiver = accountRepository.findById(idReceiver).orElseThrow(AccountNotFoundException::new);
+        if (idSender == idReceiver) {
+            return;
+        }
+
+        BigDecimal senderNewAmount = sender.getAmount().subtract(amount);
+        BigDecimal receiverNewAmount = receiver.getAmount().add(amount);
+
+        if (idSender < idReceiver) {
+            changeAmountIfVersion(sender, senderNewAmount);
+            changeAmountIfVersion(receiver, receiverNewAmount);
+        } else {
+            changeAmountIfVersion(receiver, receiverNewAmount);
+            changeAmountIfVersion(sender, senderNewAmount);
+        }
+    }
+
+    private void changeAmountIfVersion(Account account, BigDecimal newAmount) {
+        if (accountRepository.changeAmountIfVersion(account.getId(), newAmount, account.getVersion()) == 0) {
+            throw new OptimisticLockingFailureException("Account " + account.getId() + " was changed by another transaction");
+        }
+    }
+
+    /**
+     * Applies all the transfers in one transaction: one query reads and locks every involved account,
+     * the transfers are applied in memory in the given order and the changed balances are written back
+     * with a JDBC batch. A transfer that can't be applied doesn't stop the others; its status says why.
+     */
+    @Transactional
+    public List<TransferResult> transferMoneyBatch(List<TransferRequest> requests) {
+        Set<Long> ids = new HashSet<>();
+        for (TransferRequest request : requests) {
+            ids.add(request.getSenderAccountId());
+            ids.add(request.getReceiverAccountId());
+        }
+
+        Map<Long, Account> accounts = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Account account : accountRepository.findAccountsForUpdate(ids)) {
+                accounts.put(account.getId(), account);
+            }
+        }
+
+        Map<Long, Account> changedAccounts = new TreeMap<>(); //sorted by id, like the locks
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            Account sender = accounts.get(request.getSenderAccountId());
+            Account receiver = accounts.get(request.getReceiverAccountId());
+
+            TransferStatus status;
+            if (sender == null || receiver == null) {
+                status = TransferStatus.ACCOUNT_NOT_FOUND;
+            } else if (sender.getAmount().compareTo(request.getAmount()) < 0) {
+                status = TransferStatus.INSUFFICIENT_FUNDS;
+            } else {
+                sender.setAmount(sender.getAmount().subtract(request.getAmount()));
+                receiver.setAmount(receiver.getAmount().add(request.getAmount()));
+                changedAccounts.put(sender.getId(), sender);
+                changedAccounts.put(receiver.getId(), receiver);
+                status = TransferStatus.COMPLETED;
+            }
+
+            results.add(new TransferResult(
+                    request.getSenderAccountId(),
+                    request.getReceiverAccountId(),
+                    request.getAmount(),
+                    status));
+        }
+
+        if (!changedAccounts.isEmpty()) {
+            accountRepository.changeAmounts(changedAccounts.values());
+        }
+        return results;
+    }
+
     public Iterable<Account> getAllAccounts() {
         return accountRepository.findAll();
     }
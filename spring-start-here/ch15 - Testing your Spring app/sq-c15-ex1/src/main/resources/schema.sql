@@ -1,5 +1,6 @@
 create table account (
   id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
   name VARCHAR(50) NOT NULL,
-  amount DOUBLE NOT NULL
+  amount DOUBLE NOT NULL,
+  version BIGINT NOT NULL DEFAULT 0
 );
\ No newline at end of file
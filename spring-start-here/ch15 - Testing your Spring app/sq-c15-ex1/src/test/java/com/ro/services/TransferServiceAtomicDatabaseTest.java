@@ -0,0 +1,33 @@
+package com.ro.services;
+
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//runs the ATOMIC update against the H2 database of data.sql, rolled back after every test
+@SpringBootTest(properties = "transfer.mode=ATOMIC")
+@Transactional
+class TransferServiceAtomicDatabaseTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    @DisplayName("Test a fractional amount is transferred without losing the cents")
+    public void fractionalTransfer() {
+        transferService.transferMoney(1L, 2L, new BigDecimal("10.55"));
+
+        assertEquals(0, new BigDecimal("989.45").compareTo(accountRepository.findById(1L).orElseThrow().getAmount()));
+        assertEquals(0, new BigDecimal("1010.55").compareTo(accountRepository.findById(2L).orElseThrow().getAmount()));
+    }
+}
@@ -0,0 +1,64 @@
+package com.ro.services;
+
+import com.ro.exceptions.AccountNotFoundException;
+import com.ro.exceptions.InsufficientFundsException;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferServiceAtomicTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @InjectMocks
+    private TransferService transferService;
+
+    @BeforeEach
+    public void setUp() {
+        //the mode is normally injected from the transfer.mode property
+        ReflectionTestUtils.setField(transferService, "transferMode", TransferMode.ATOMIC);
+    }
+
+    @Test
+    @DisplayName("Test the amount is transferred with a single update and without reading the accounts")
+    public void moneyTransferHappyFlow() {
+        when(accountRepository.transferAmount(1L, 2L, new BigDecimal(100))).thenReturn(2);
+
+        transferService.transferMoney(1L, 2L, new BigDecimal(100));
+
+        verify(accountRepository, never()).findById(anyLong());
+        verify(accountRepository, never()).changeAmount(anyLong(), any());
+    }
+
+    @Test
+    public void moneyTransferDestinationAccountNotFoundFlow() {
+        //only the sender row was found, so only one row was updated
+        when(accountRepository.transferAmount(1L, 2L, new BigDecimal(100))).thenReturn(1);
+        when(accountRepository.existsById(1L)).thenReturn(true);
+        when(accountRepository.existsById(2L)).thenReturn(false);
+
+        assertThrows(AccountNotFoundException.class, () -> transferService.transferMoney(1L, 2L, new BigDecimal(100)));
+    }
+
+    @Test
+    public void moneyTransferInsufficientFundsFlow() {
+        //the sender row did not pass the balance check, so only the receiver row was updated
+        when(accountRepository.transferAmount(1L, 2L, new BigDecimal(100))).thenReturn(1);
+        when(accountRepository.existsById(anyLong())).thenReturn(true);
+
+        assertThrows(InsufficientFundsException.class, () -> transferService.transferMoney(1L, 2L, new BigDecimal(100)));
+    }
+}
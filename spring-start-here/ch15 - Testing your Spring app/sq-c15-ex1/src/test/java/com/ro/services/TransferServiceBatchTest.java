@@ -0,0 +1,82 @@
+package com.ro.services;
+
+import com.ro.dto.TransferRequest;
+import com.ro.dto.TransferResult;
+import com.ro.dto.TransferStatus;
+import com.ro.model.Account;
+import com.ro.repositories.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferServiceBatchTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @InjectMocks
+    private TransferService transferService;
+
+    @Test
+    @DisplayName("Test every transfer of a batch gets its own outcome and the balances are written once")
+    public void moneyTransferBatchFlow() {
+        //given
+        when(accountRepository.findAccountsForUpdate(anyCollection()))
+                .thenReturn(List.of(account(1L, 1000), account(2L, 1000)));
+
+        List<TransferRequest> requests = List.of(
+                request(1L, 2L, 600),
+                request(1L, 3L, 100), //account 3 doesn't exist
+                request(1L, 2L, 600), //account 1 only has 400 left
+                request(2L, 1L, 100));
+
+        //when
+        List<TransferResult> results = transferService.transferMoneyBatch(requests);
+
+        //then
+        assertEquals(List.of(
+                        TransferStatus.COMPLETED,
+                        TransferStatus.ACCOUNT_NOT_FOUND,
+                        TransferStatus.INSUFFICIENT_FUNDS,
+                        TransferStatus.COMPLETED),
+                results.stream().map(TransferResult::getStatus).toList());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Account>> changed = ArgumentCaptor.forClass(Collection.class);
+        verify(accountRepository).changeAmounts(changed.capture());
+        List<Account> accounts = new ArrayList<>(changed.getValue());
+        assertEquals(2, accounts.size());
+        assertEquals(new BigDecimal(500), accounts.get(0).getAmount());
+        assertEquals(new BigDecimal(1500), accounts.get(1).getAmount());
+        verify(accountRepository, never()).changeAmount(anyLong(), any());
+    }
+
+    private static Account account(long id, int amount) {
+        Account account = new Account();
+        account.setId(id);
+        account.setAmount(new BigDecimal(amount));
+        return account;
+    }
+
+    private static TransferRequest request(long idSender, long idReceiver, int amount) {
+        TransferRequest request = new TransferRequest();
+        request.setSenderAccountId(idSender);
+        request.setReceiverAccountId(idReceiver);
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+}
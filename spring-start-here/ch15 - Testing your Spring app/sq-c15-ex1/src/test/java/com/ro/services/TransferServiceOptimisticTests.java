@@ -0,0 +1,92 @@
+package com.ro.services;
+
+import com.ro.model.Account;
+import com.ro.repositories.AccountRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+//a Spring Boot test, because the retries are done by the @Retryable advice around TransferService
+@SpringBootTest(properties = {
+        "transfer.mode=OPTIMISTIC",
+        "transfer.optimistic.max-attempts=3",
+        "transfer.optimistic.backoff-delay=1",
+        "transfer.optimistic.backoff-max-delay=2"})
+class TransferServiceOptimisticTests {
+
+    @MockBean
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("Test the balances are written with a version check, in account id order")
+    public void moneyTransferHappyFlow() {
+        givenAccount(1L, 3L);
+        givenAccount(2L, 7L);
+        when(accountRepository.changeAmountIfVersion(anyLong(), any(), anyLong())).thenReturn(1);
+
+        transferService.transferMoney(2L, 1L, new BigDecimal(100));
+
+        InOrder inOrder = inOrder(accountRepository);
+        inOrder.verify(accountRepository).changeAmountIfVersion(1L, new BigDecimal(1100), 3L);
+        inOrder.verify(accountRepository).changeAmountIfVersion(2L, new BigDecimal(900), 7L);
+        verify(accountRepository, never()).changeAmount(anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Test a transfer that lost the race is retried with the balances read again")
+    public void moneyTransferConflictFlow() {
+        givenAccount(1L, 0L);
+        givenAccount(2L, 0L);
+        //another transaction changed the sender between our read and our write
+        when(accountRepository.changeAmountIfVersion(eq(1L), any(), anyLong())).thenReturn(0, 1);
+        when(accountRepository.changeAmountIfVersion(eq(2L), any(), anyLong())).thenReturn(1);
+        double conflicts = meterRegistry.counter("transfer.optimistic.conflicts").count();
+
+        transferService.transferMoney(1L, 2L, new BigDecimal(100));
+
+        verify(accountRepository, times(2)).findById(1L);
+        verify(accountRepository, times(2)).changeAmountIfVersion(eq(1L), any(), anyLong());
+        verify(accountRepository, times(1)).changeAmountIfVersion(eq(2L), any(), anyLong());
+        assertEquals(conflicts + 1, meterRegistry.counter("transfer.optimistic.conflicts").count());
+    }
+
+    @Test
+    public void moneyTransferTooManyConflictsFlow() {
+        givenAccount(1L, 0L);
+        givenAccount(2L, 0L);
+        when(accountRepository.changeAmountIfVersion(anyLong(), any(), anyLong())).thenReturn(0);
+        double exhausted = meterRegistry.counter("transfer.optimistic.exhausted").count();
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> transferService.transferMoney(1L, 2L, new BigDecimal(100)));
+
+        verify(accountRepository, times(3)).changeAmountIfVersion(eq(1L), any(), anyLong());
+        assertEquals(exhausted + 1, meterRegistry.counter("transfer.optimistic.exhausted").count());
+    }
+
+    private void givenAccount(long id, long version) {
+        Account account = new Account();
+        account.setId(id);
+        account.setAmount(new BigDecimal(1000));
+        account.setVersion(version);
+        when(accountRepository.findById(id)).thenReturn(Optional.of(account));
+    }
+}